@@ -0,0 +1,49 @@
+package vcpkg.installer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Index build and query latency of {@link PortCatalog} over a ~2,500-port tree. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogBenchmark {
+    @Param({ "b", "boo", "boost", "compression library", "zzz" })
+    public String query;
+
+    private Path ports;
+    private PortCatalog catalog;
+
+    @Setup
+    public void setup() throws IOException {
+        ports = VcpkgOutputs.portsTree();
+        catalog = new PortCatalog(ports);
+        catalog.refresh();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(ports)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<PortCatalog.Port> search() {
+        return catalog.search(query);
+    }
+
+    @Benchmark
+    public void refreshUnchanged() {
+        catalog.refresh();
+    }
+}
@@ -0,0 +1,59 @@
+package vcpkg.installer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Build and query cost of {@link DependencyGraph} over a ~2,500-port tree with 500 installed packages. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+    private Path ports;
+    private List<PortCatalog.Port> catalogPorts;
+    private final List<StatusDatabase.Entry> installed = new ArrayList<>();
+    private DependencyGraph graph;
+
+    @Setup
+    public void setup() throws IOException {
+        ports = VcpkgOutputs.portsTree();
+        var catalog = new PortCatalog(ports);
+        catalog.refresh();
+        catalogPorts = catalog.entries();
+        StatusDatabase.parse(ByteBuffer.wrap(VcpkgOutputs.status().getBytes(StandardCharsets.UTF_8)), installed::add);
+        graph = build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(ports)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public DependencyGraph build() {
+        return DependencyGraph.build(installed, catalogPorts, "x64-linux");
+    }
+
+    @Benchmark
+    public List<String> dependents() {
+        return graph.dependents(VcpkgOutputs.portName(0));
+    }
+
+    @Benchmark
+    public List<String> missingDependencies() {
+        return graph.missingDependencies(VcpkgOutputs.portName(VcpkgOutputs.PORTS - 1));
+    }
+}
@@ -0,0 +1,87 @@
+package vcpkg.installer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/** Parsing of {@code vcpkg search}/{@code vcpkg list} output and of the status database. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    // The patterns Storage used before OutputScanner, kept as the baseline.
+    private static final Pattern fromSearch = Pattern.compile("^(\\S+)\\s+((\\S+)\\s\\s)?\\s+(.*)?$");
+    private static final Pattern fromList = Pattern.compile("^([^:]+):\\S+\\s+((\\S+)\\s\\s)?\\s+(.*)?$");
+
+    private List<String> search;
+    private List<String> list;
+    private ByteBuffer status;
+
+    @Setup
+    public void setup() {
+        search = VcpkgOutputs.search();
+        list = VcpkgOutputs.list();
+        status = ByteBuffer.wrap(VcpkgOutputs.status().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String[]> regex(List<String> lines, Pattern pattern) {
+        return lines.stream()
+                .map(pattern::matcher)
+                .filter(Matcher::find)
+                .map(match -> new String[] { match.group(1), match.group(3), match.group(4) })
+                .collect(Collectors.toMap(m -> m[0], Function.identity(), (a, b) -> a));
+    }
+
+    private static Map<String, String[]> scanner(List<String> lines, OutputScanner.Format format) {
+        var result = new HashMap<String, String[]>();
+        var scanner = new OutputScanner(format);
+        OutputScanner.Sink sink = (name, feature, triplet, version, description) -> {
+            var key = OutputScanner.displayName(name, feature);
+            if (!result.containsKey(key)) {
+                result.put(key, new String[] { key, version, description });
+            }
+        };
+        for (var line : lines) {
+            scanner.scan(line, sink);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, String[]> searchRegex() {
+        return regex(search, fromSearch);
+    }
+
+    @Benchmark
+    public Map<String, String[]> searchScanner() {
+        return scanner(search, OutputScanner.Format.SEARCH);
+    }
+
+    @Benchmark
+    public Map<String, String[]> listRegex() {
+        return regex(list, fromList);
+    }
+
+    @Benchmark
+    public Map<String, String[]> listScanner() {
+        return scanner(list, OutputScanner.Format.LIST);
+    }
+
+    @Benchmark
+    public void statusDatabase(Blackhole blackhole) {
+        StatusDatabase.parse(status.duplicate(), blackhole::consume);
+    }
+}
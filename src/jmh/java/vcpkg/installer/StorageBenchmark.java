@@ -0,0 +1,76 @@
+package vcpkg.installer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** {@code updateInfo}'s reconciliation of the installed map and the read paths used by the table. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private Storage storage;
+    private Map<String, String[]> installed;
+    private Map<String, String[]> changed;
+    private List<String> names;
+    private boolean flip = false;
+
+    @Setup
+    public void setup() {
+        storage = new Storage((snapshot, diff) -> { }, false);
+        installed = new HashMap<>();
+        var scanner = new OutputScanner(OutputScanner.Format.LIST);
+        for (var line : VcpkgOutputs.list()) {
+            scanner.scan(line, (name, feature, triplet, version, description) ->
+                    installed.put(name, new String[] { name, version, description }));
+        }
+
+        changed = new HashMap<>(installed);
+        var it = changed.keySet().iterator();
+        for (int i = 0; i < 10 && it.hasNext(); i++) {
+            it.next();
+            it.remove();
+        }
+        for (int i = 0; i < 10; i++) {
+            changed.put("added-" + i, new String[] { "added-" + i, "1.0", "added package" });
+        }
+
+        storage.reconcile(installed);
+        names = storage.getNames();
+    }
+
+    @Benchmark
+    public void reconcileUnchanged() {
+        storage.reconcile(installed);
+    }
+
+    @Benchmark
+    public void reconcileTenChanged() {
+        flip = !flip;
+        storage.reconcile(flip ? changed : installed);
+    }
+
+    @Benchmark
+    public List<String> getNames() {
+        return storage.getNames();
+    }
+
+    @Benchmark
+    public void getAll(Blackhole blackhole) {
+        for (var name : names) {
+            blackhole.consume(storage.get(name));
+        }
+    }
+
+    @Benchmark
+    public PackageInfo getMissing() {
+        return storage.get("no-such-port");
+    }
+}
@@ -0,0 +1,59 @@
+package vcpkg.installer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.swing.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Cell value and renderer throughput of the {@code UI} table over a full search result, without a live {@link Storage}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark {
+    private JTable table;
+    private UI.PackageTableModel model;
+
+    @Setup
+    public void setup() throws Exception {
+        var storage = new HashMap<String, PackageInfo>();
+        var scanner = new OutputScanner(OutputScanner.Format.SEARCH);
+        for (var line : VcpkgOutputs.search()) {
+            scanner.scan(line, (name, feature, triplet, version, description) -> {
+                var key = OutputScanner.displayName(name, feature);
+                storage.put(key, new PackageInfo(key, version, description, PackageInfo.Status.NOT_INSTALLED));
+            });
+        }
+        var snapshot = Snapshot.of(1, List.copyOf(storage.keySet()), storage);
+
+        SwingUtilities.invokeAndWait(() -> {
+            table = new JTable();
+            model = new UI.PackageTableModel(false);
+            UI.updateTable(table, model, info -> List.of());
+            model.apply(snapshot, snapshot.diffFrom(Snapshot.EMPTY));
+        });
+    }
+
+    @Benchmark
+    public void getValueAt(Blackhole blackhole) {
+        for (int row = 0, rows = model.getRowCount(); row < rows; row++) {
+            for (int column = 0, columns = model.getColumnCount(); column < columns; column++) {
+                blackhole.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) {
+        for (int row = 0, rows = model.getRowCount(); row < rows; row++) {
+            for (int column = 0, columns = model.getColumnCount(); column < columns; column++) {
+                blackhole.consume(table.prepareRenderer(table.getCellRenderer(row, column), row, column));
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic stand-ins for recorded vcpkg output, laid out in vcpkg's column format: a full
+ * {@code vcpkg search} over ~2,500 ports (with feature lines) and a 500-package {@code vcpkg list}.
+ */
+class VcpkgOutputs {
+    static final int PORTS = 2_500;
+    static final int INSTALLED = 500;
+
+    private static final String[] WORDS = {
+        "library", "c++", "header-only", "fast", "portable", "json", "xml", "compression", "network",
+        "boost", "graphics", "audio", "crypto", "parser", "async", "test", "framework", "image",
+    };
+
+    static String portName(int i) {
+        return (i % 7 == 0 ? "boost-" : i % 5 == 0 ? "lib" : "") + WORDS[i % WORDS.length] + "-" + i;
+    }
+
+    static String description(Random random) {
+        var sb = new StringBuilder("A");
+        for (int w = 0, n = 4 + random.nextInt(12); w < n; w++) {
+            sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    static String version(Random random) {
+        return random.nextInt(10) + "." + random.nextInt(30) + "." + random.nextInt(10);
+    }
+
+    static List<String> search() {
+        var random = new Random(42);
+        var lines = new ArrayList<String>();
+        for (int i = 0; i < PORTS; i++) {
+            var name = portName(i);
+            lines.add(String.format("%-24s %-16s %s", name, version(random), description(random)));
+            if (i % 4 == 0) {
+                lines.add(String.format("%-24s %-16s %s", name + "[tools]", "", description(random)));
+            }
+        }
+        lines.add("");
+        lines.add("The search result may be outdated. Run `git pull` to get the latest results.");
+        return lines;
+    }
+
+    static List<String> list() {
+        var random = new Random(7);
+        var lines = new ArrayList<String>();
+        for (int i = 0; i < INSTALLED; i++) {
+            var spec = portName(i * 5) + ":x64-linux";
+            lines.add(String.format("%-49s %-19s %s", spec, version(random), description(random)));
+        }
+        return lines;
+    }
+
+    static String status() {
+        var random = new Random(11);
+        var sb = new StringBuilder();
+        for (int i = 0; i < INSTALLED; i++) {
+            sb.append("Package: ").append(portName(i * 5)).append('\n')
+                .append("Version: ").append(version(random)).append('\n')
+                .append("Depends: vcpkg-cmake, ").append(portName(random.nextInt(PORTS))).append('\n')
+                .append("Architecture: x64-linux\n")
+                .append("Multi-Arch: same\n")
+                .append("Abi: ").append(Long.toHexString(random.nextLong())).append('\n')
+                .append("Description: ").append(description(random)).append('\n')
+                .append("Status: install ok installed\n\n");
+        }
+        return sb.toString();
+    }
+
+    static Path portsTree() throws IOException {
+        var random = new Random(42);
+        var root = Files.createTempDirectory("vcpkg-ports");
+        for (int i = 0; i < PORTS; i++) {
+            var dir = Files.createDirectory(root.resolve(portName(i)));
+            var dependencies = i == 0 ? "" : String.format("\"%s\", \"%s\"",
+                    portName(random.nextInt(i)), portName(random.nextInt(i)));
+            Files.writeString(dir.resolve("vcpkg.json"), String.format(
+                    "{\n  \"name\": \"%s\",\n  \"version\": \"%s\",\n  \"description\": \"%s\",\n  \"dependencies\": [%s]\n}\n",
+                    portName(i), version(random), description(random), dependencies), StandardCharsets.UTF_8);
+        }
+        return root;
+    }
+}
@@ -0,0 +1,101 @@
+package vcpkg.installer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The local directories of vcpkg's binary cache ({@code files} providers and the default archives
+ * directory). A package built with ABI hash {@code abi} is stored as {@code <dir>/<abi[0..2]>/<abi>.zip};
+ * if that file exists, installing the package is a restore that takes seconds instead of a build.
+ */
+public class BinaryCache {
+    private final List<Path> dirs;
+
+    public BinaryCache(List<Path> dirs) {
+        this.dirs = List.copyOf(dirs);
+    }
+
+    /**
+     * The directories vcpkg would read: {@code -Dvcpkg.binaryCache} if set, otherwise the
+     * {@code default} and {@code files,<dir>} entries of {@code VCPKG_BINARY_SOURCES} on top of the
+     * default archives directory.
+     */
+    public static BinaryCache fromEnvironment() {
+        if (Config.BINARY_CACHE != null) {
+            return new BinaryCache(Config.BINARY_CACHE.isEmpty() ? List.of() : List.of(Path.of(Config.BINARY_CACHE)));
+        }
+        var dirs = new ArrayList<Path>();
+        var defaultDir = defaultDirectory();
+        if (defaultDir != null) {
+            dirs.add(defaultDir);
+        }
+        var sources = System.getenv("VCPKG_BINARY_SOURCES");
+        for (var source : sources == null ? new String[0] : sources.split(";")) {
+            var parts = source.trim().split(",");
+            switch (parts[0]) {
+                case "clear":
+                    dirs.clear();
+                    break;
+                case "default":
+                    if (defaultDir != null && !dirs.contains(defaultDir)) dirs.add(defaultDir);
+                    break;
+                case "files":
+                    if (parts.length > 1 && !parts[1].isEmpty()) dirs.add(Path.of(parts[1]));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new BinaryCache(dirs);
+    }
+
+    public List<Path> getDirectories() {
+        return dirs;
+    }
+
+    /** @return {@code true} if an archive for {@code abi} exists; {@code false} for a {@code null} ABI */
+    public boolean contains(String abi) {
+        if (abi == null || abi.length() < 2) {
+            return false;
+        }
+        for (var dir : dirs) {
+            if (Files.isRegularFile(dir.resolve(abi.substring(0, 2)).resolve(abi + ".zip"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path defaultDirectory() {
+        var explicit = System.getenv("VCPKG_DEFAULT_BINARY_CACHE");
+        if (explicit != null && !explicit.isEmpty()) {
+            return Path.of(explicit);
+        }
+        if (System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows")) {
+            var localAppData = System.getenv("LOCALAPPDATA");
+            return localAppData == null ? null : Path.of(localAppData, "vcpkg", "archives");
+        }
+        var xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isEmpty()) {
+            return Path.of(xdg, "vcpkg", "archives");
+        }
+        return Path.of(System.getProperty("user.home"), ".cache", "vcpkg", "archives");
+    }
+
+    /** @return the triplet vcpkg uses when a package spec names none */
+    static String defaultTriplet() {
+        var explicit = System.getenv("VCPKG_DEFAULT_TRIPLET");
+        if (explicit != null && !explicit.isEmpty()) {
+            return explicit;
+        }
+        var os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        var arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+        var cpu = arch.equals("aarch64") || arch.equals("arm64") ? "arm64" : arch.contains("64") ? "x64" : "x86";
+        if (os.startsWith("windows")) return cpu + "-windows";
+        if (os.startsWith("mac")) return cpu + "-osx";
+        return cpu + "-linux";
+    }
+}
@@ -0,0 +1,153 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Wall-clock durations of past builds, binary cache restores and removals per port, version and
+ * triplet, kept in a small tab-separated file; a package without a triplet counts as vcpkg's default
+ * one. Repeated runs of the same key are averaged with the previous value. An estimate for an unknown
+ * key falls back to the same port with any version or triplet, then to the median of everything
+ * recorded for the operation.
+ */
+public class BuildHistory {
+    public enum Operation {
+        /** Install built from source */
+        INSTALL,
+        /** Install restored from the binary cache */
+        RESTORE,
+        REMOVE,
+    }
+
+    static final long DEFAULT_INSTALL_MILLIS = 60_000;
+    static final long DEFAULT_RESTORE_MILLIS = 5_000;
+    static final long DEFAULT_REMOVE_MILLIS = 2_000;
+
+    private static final String ELAPSED = "Elapsed time to handle ";
+
+    private final Path file;
+    private final Map<String, Long> durations = new HashMap<>();
+    private final Map<String, Long> byPort = new HashMap<>();
+
+    /** @param file {@code null} keeps the history in memory only */
+    public BuildHistory(Path file) {
+        this.file = file;
+        if (file == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                var fields = line.split("\t");
+                if (fields.length != 5) continue;
+                try {
+                    put(Operation.valueOf(fields[0]), fields[1], fields[2], fields[3], Long.parseLong(fields[4]));
+                } catch (IllegalArgumentException ignored) { }
+            }
+        } catch (IOException ignored) { }
+    }
+
+    public synchronized void record(Operation operation, String port, String version, String triplet, long millis) {
+        var previous = durations.get(key(operation, port, version, triplet));
+        put(operation, port, version, triplet, previous == null ? millis : (previous + millis) / 2);
+        save();
+    }
+
+    public synchronized long estimate(Operation operation, String port, String version, String triplet) {
+        var exact = durations.get(key(operation, port, version, triplet));
+        if (exact != null) {
+            return exact;
+        }
+        var anyVersion = byPort.get(operation + "\t" + port);
+        if (anyVersion != null) {
+            return anyVersion;
+        }
+        var prefix = operation + "\t";
+        var known = durations.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(prefix))
+                .mapToLong(Map.Entry::getValue)
+                .sorted()
+                .toArray();
+        if (known.length > 0) {
+            return known[known.length / 2];
+        }
+        switch (operation) {
+            case INSTALL: return DEFAULT_INSTALL_MILLIS;
+            case RESTORE: return DEFAULT_RESTORE_MILLIS;
+            default: return DEFAULT_REMOVE_MILLIS;
+        }
+    }
+
+    /**
+     * Parses vcpkg's per-package timing line, e.g. {@code Elapsed time to handle zlib:x64-linux: 1.2 s}.
+     *
+     * @return the package spec and its duration in milliseconds, or {@code null} for other lines
+     */
+    static Map.Entry<String, Long> parseElapsed(String line) {
+        if (!line.startsWith(ELAPSED)) {
+            return null;
+        }
+        int colon = line.lastIndexOf(": ");
+        if (colon <= ELAPSED.length()) {
+            return null;
+        }
+        var spec = line.substring(ELAPSED.length(), colon);
+        var duration = line.substring(colon + 2).trim();
+        int unitStart = 0;
+        while (unitStart < duration.length()
+                && (Character.isDigit(duration.charAt(unitStart)) || duration.charAt(unitStart) == '.')) {
+            unitStart++;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(duration.substring(0, unitStart));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        double scale;
+        switch (duration.substring(unitStart).trim()) {
+            case "ns": scale = 1e-6; break;
+            case "us": scale = 1e-3; break;
+            case "ms": scale = 1; break;
+            case "s": scale = 1_000; break;
+            case "min": scale = 60_000; break;
+            case "h": scale = 3_600_000; break;
+            default: return null;
+        }
+        return Map.entry(spec, Math.round(value * scale));
+    }
+
+    private void put(Operation operation, String port, String version, String triplet, long millis) {
+        durations.put(key(operation, port, version, triplet), millis);
+        byPort.put(operation + "\t" + port, millis);
+    }
+
+    /**
+     * @param triplet {@code null} or empty for vcpkg's default triplet, which is what a spec without
+     * one installs and what vcpkg's own timing lines name, so both find the same entry
+     */
+    private static String key(Operation operation, String port, String version, String triplet) {
+        var resolved = triplet == null || triplet.isEmpty() ? BinaryCache.defaultTriplet() : triplet;
+        return operation + "\t" + port + "\t" + Objects.toString(version, "") + "\t" + resolved;
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        var lines = new ArrayList<String>(durations.size());
+        durations.forEach((key, millis) -> lines.add(key + "\t" + millis));
+        Collections.sort(lines);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            var temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {
+            // estimates still work from memory
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package vcpkg.installer;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locking policy for vcpkg invocations. Read-only commands ({@code list}, {@code search}, ...)
+ * and source prefetches ({@code install --only-downloads}) take no lock and run concurrently with
+ * everything else; mutating commands are serialized per vcpkg executable (i.e. root) and triplet.
+ * Independently of that, each kind of command has a fixed number of permits that caps how many
+ * such processes run at once.
+ */
+public class CommandLocks {
+    public enum Kind {
+        READ,
+        MUTATE,
+        DOWNLOAD,
+    }
+
+    /** Held while a command runs; releases its lock and permit. */
+    public interface Guard extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Set<String> MUTATING = Set.of(
+            "install", "remove", "upgrade", "update", "x-set-installed", "export");
+
+    private final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Map<Kind, Semaphore> permits = new EnumMap<>(Kind.class);
+
+    public CommandLocks(int readPermits, int mutatePermits, int downloadPermits) {
+        permits.put(Kind.READ, new Semaphore(readPermits, true));
+        permits.put(Kind.MUTATE, new Semaphore(mutatePermits, true));
+        permits.put(Kind.DOWNLOAD, new Semaphore(downloadPermits, true));
+    }
+
+    public static Kind kindOf(List<String> command) {
+        if (command.contains("--only-downloads")) {
+            return Kind.DOWNLOAD;
+        }
+        return command.size() > 1 && MUTATING.contains(command.get(1)) ? Kind.MUTATE : Kind.READ;
+    }
+
+    /** @return the lock guarding {@code command}, or {@code null} for commands that need none */
+    public ReentrantLock lockFor(List<String> command) {
+        if (kindOf(command) != Kind.MUTATE) {
+            return null;
+        }
+        return locks.computeIfAbsent(command.get(0) + "|" + triplet(command), k -> new ReentrantLock(true));
+    }
+
+    /**
+     * Blocks until {@code command} may run: first its lock, if any, then a permit of its kind, so
+     * a command queued behind a lock does not keep a permit from commands for other triplets.
+     */
+    public Guard acquire(List<String> command) throws InterruptedException {
+        var lock = lockFor(command);
+        var semaphore = permits.get(kindOf(command));
+        if (lock != null) {
+            lock.lockInterruptibly();
+        }
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            if (lock != null) {
+                lock.unlock();
+            }
+            throw e;
+        }
+        return () -> {
+            semaphore.release();
+            if (lock != null) {
+                lock.unlock();
+            }
+        };
+    }
+
+    /** @return the number of commands of {@code kind} waiting for a permit */
+    public int waiting(Kind kind) {
+        return permits.get(kind).getQueueLength();
+    }
+
+    private static String triplet(List<String> command) {
+        for (int i = 2; i < command.size(); i++) {
+            var arg = command.get(i);
+            if (arg.startsWith("--triplet=")) {
+                return arg.substring("--triplet=".length());
+            }
+            if (arg.equals("--triplet") && i + 1 < command.size()) {
+                return command.get(i + 1);
+            }
+            if (!arg.startsWith("-")) {
+                var triplet = InstallScheduler.triplet(arg);
+                if (triplet != null) {
+                    return triplet;
+                }
+            }
+        }
+        return "";
+    }
+}
@@ -3,5 +3,54 @@ package vcpkg.installer;
 import java.nio.file.Path;
 
 public interface Config {
-    String VCPKG_PATH = "vcpkg";
+    String VCPKG_PATH = System.getProperty("vcpkg.path", "vcpkg");
+    Path VCPKG_ROOT = Utils.findVcpkgRoot(VCPKG_PATH);
+    /** {@code <vcpkg path>[@<triplet>]} entries separated by {@code ;}; empty manages {@link #VCPKG_PATH} only */
+    String SHARDS = System.getProperty("vcpkg.shards", "");
+
+    long CATALOG_REFRESH_SECONDS = 30;
+    long INSTALLED_POLL_SECONDS = 30;
+    long INSTALLED_DEBOUNCE_MILLIS = 300;
+
+    /** {@code auto} uses virtual threads where the JDK has them, {@code platform} never does */
+    String THREADS = System.getProperty("vcpkg.threads", "auto");
+    /** Concurrent read-only vcpkg processes ({@code list}, {@code search}, ...) */
+    int READ_PROCESSES = Integer.getInteger("vcpkg.readProcesses", 4);
+    /** Concurrent mutating vcpkg processes ({@code install}, {@code remove}, ...) */
+    int INSTALL_WORKERS = Integer.getInteger("vcpkg.installWorkers", 2);
+    /** Concurrent source prefetches ({@code install --only-downloads}) */
+    int DOWNLOAD_PROCESSES = Integer.getInteger("vcpkg.downloadProcesses", 4);
+    long SHUTDOWN_SECONDS = 10;
+    /**
+     * Per-command limits in seconds, e.g. {@code install=14400,remove=600}; a listed command
+     * overrides the caller's timeout, {@code 0} means none. Commands are named as in the metrics:
+     * {@code install}, {@code remove}, {@code list}, {@code search}, {@code download}.
+     */
+    String COMMAND_DEADLINES = System.getProperty("vcpkg.deadlines", "");
+    /**
+     * Per-command seconds without any output after which the command counts as hung, same format.
+     * Off by default: a large port can legitimately build for hours without printing a line.
+     */
+    String COMMAND_IDLE_TIMEOUTS = System.getProperty("vcpkg.idleTimeouts", "");
+
+    int SEARCH_CACHE_ENTRIES = 64;
+    int SEARCH_CACHE_ROWS = 50_000;
+    long SEARCH_CACHE_TTL_SECONDS = 300;
+
+    Path DATA_DIR = Path.of(System.getProperty("user.home"), ".vcpkg-installer");
+    /** Empty disables the persistent snapshot */
+    String SNAPSHOT_FILE = System.getProperty("vcpkg.snapshot", DATA_DIR.resolve("snapshot.bin").toString());
+    /** Empty keeps build durations in memory only */
+    String HISTORY_FILE = System.getProperty("vcpkg.history", DATA_DIR.resolve("history.tsv").toString());
+    /** Binary cache directory; unset follows vcpkg's environment, empty disables cache-aware planning */
+    String BINARY_CACHE = System.getProperty("vcpkg.binaryCache");
+    /** {@code longest} (throughput) or {@code shortest} (interactive), see {@link InstallScheduler.Order} */
+    String INSTALL_ORDER = System.getProperty("vcpkg.installOrder", "longest");
+    /** Fetch the sources of all builds up front while earlier packages compile */
+    boolean PREFETCH = Boolean.parseBoolean(System.getProperty("vcpkg.prefetch", "true"));
+    /** Local directory used as vcpkg's asset cache (read and write); empty leaves the environment alone */
+    String ASSET_SOURCE = System.getProperty("vcpkg.assetSource", "");
+
+    long METRICS_DUMP_SECONDS = Long.getLong("vcpkg.metrics.dumpSeconds", 0);
+    String METRICS_DUMP_FILE = System.getProperty("vcpkg.metrics.dumpFile");
 }
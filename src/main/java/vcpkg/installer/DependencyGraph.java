@@ -0,0 +1,216 @@
+package vcpkg.installer;
+
+import java.util.*;
+
+/**
+ * Ports of one triplet and their dependencies, with forward and reverse edges in compressed
+ * sparse row form: the dependencies of port {@code i} are {@code forward[forwardStart[i]]} up to
+ * {@code forward[forwardStart[i + 1]]}, its dependents likewise in {@code reverse}. Installed
+ * packages use what vcpkg recorded in the status database, all other ports their manifests: a
+ * dependency whose platform expression is false for the triplet is left out, one vcpkg would
+ * decide on something the triplet's name does not tell is kept, and features, default ones
+ * included, add the dependencies of their catalog entries. Immutable; built again on change.
+ */
+public class DependencyGraph {
+    public static final DependencyGraph EMPTY = build(List.of(), List.of(), null);
+
+    /** Sorted, so ids are found by binary search */
+    private final String[] names;
+    private final BitSet installed;
+    private final int[] forwardStart;
+    private final int[] forward;
+    private final int[] reverseStart;
+    private final int[] reverse;
+
+    private DependencyGraph(String[] names, BitSet installed, int[] forwardStart, int[] forward) {
+        this.names = names;
+        this.installed = installed;
+        this.forwardStart = forwardStart;
+        this.forward = forward;
+
+        int n = names.length;
+        reverseStart = new int[n + 1];
+        for (int target : forward) {
+            reverseStart[target + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            reverseStart[i + 1] += reverseStart[i];
+        }
+        reverse = new int[forward.length];
+        var fill = Arrays.copyOf(reverseStart, n);
+        for (int source = 0; source < n; source++) {
+            for (int e = forwardStart[source]; e < forwardStart[source + 1]; e++) {
+                reverse[fill[forward[e]]++] = source;
+            }
+        }
+    }
+
+    /**
+     * @param installed installed paragraphs (core and features) of the graph's triplet
+     * @param ports     the port catalog with its {@code name[feature]} entries; installed packages take their
+     *                  edges from {@code installed} instead
+     * @param triplet   platform expressions in {@code ports} are evaluated for it; {@code null} keeps every edge
+     */
+    public static DependencyGraph build(Collection<StatusDatabase.Entry> installed, Collection<PortCatalog.Port> ports,
+                                        String triplet) {
+        var edges = new HashMap<String, Set<String>>();
+        for (var entry : installed) {
+            var targets = edges.computeIfAbsent(entry.getName(), k -> new LinkedHashSet<>());
+            for (var depends : entry.getDepends()) {
+                var target = port(depends);
+                if (!target.equals(entry.getName()) && !isHostDependency(depends, entry.getTriplet())) {
+                    targets.add(target);
+                }
+            }
+        }
+        var installedNames = Set.copyOf(edges.keySet());
+        var catalog = new HashMap<String, PortCatalog.Port>();
+        ports.forEach(port -> catalog.put(port.getName(), port));
+        for (var port : ports) {
+            if (port.getName().indexOf('[') < 0 && !installedNames.contains(port.getName())) {
+                edges.computeIfAbsent(port.getName(), k -> new LinkedHashSet<>())
+                        .addAll(dependencies(port, catalog, triplet));
+            }
+        }
+
+        var all = new TreeSet<>(edges.keySet());
+        edges.values().forEach(all::addAll);
+        var names = all.toArray(new String[0]);
+
+        var isInstalled = new BitSet(names.length);
+        int edgeCount = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (installedNames.contains(names[i])) {
+                isInstalled.set(i);
+            }
+            edgeCount += edges.getOrDefault(names[i], Set.of()).size();
+        }
+        var forwardStart = new int[names.length + 1];
+        var forward = new int[edgeCount];
+        int e = 0;
+        for (int i = 0; i < names.length; i++) {
+            forwardStart[i] = e;
+            for (var target : edges.getOrDefault(names[i], Set.of())) {
+                forward[e++] = Arrays.binarySearch(names, target);
+            }
+        }
+        forwardStart[names.length] = e;
+        return new DependencyGraph(names, isInstalled, forwardStart, forward);
+    }
+
+    /**
+     * @return the ports {@code port} depends on for {@code triplet}, following each feature it or a
+     * dependency asks for (its own default features are dependencies on itself) to that feature's entry
+     */
+    private static Set<String> dependencies(PortCatalog.Port port, Map<String, PortCatalog.Port> catalog, String triplet) {
+        var self = port(port.getName());
+        var targets = new LinkedHashSet<String>();
+        var seen = new HashSet<String>();
+        seen.add(port.getName());
+        var queue = new ArrayDeque<PortCatalog.Port>();
+        queue.add(port);
+        while (!queue.isEmpty()) {
+            for (var dependency : queue.remove().getDependencies()) {
+                var spec = dependency;
+                int paren = dependency.indexOf('(');
+                if (paren >= 0) {
+                    int close = dependency.lastIndexOf(')');
+                    if (!PlatformExpression.matches(dependency.substring(paren + 1, close > paren ? close : dependency.length()), triplet)) {
+                        continue;
+                    }
+                    spec = dependency.substring(0, paren).trim();
+                }
+                var target = port(spec);
+                if (!target.equals(self)) {
+                    targets.add(target);
+                }
+                int bracket = spec.indexOf('[');
+                if (bracket < 0) {
+                    continue;
+                }
+                for (var feature : spec.substring(bracket + 1).replace("]", "").split(",")) {
+                    var entry = catalog.get(target + "[" + feature.trim() + "]");
+                    if (entry != null && seen.add(entry.getName())) {
+                        queue.add(entry);
+                    }
+                }
+            }
+        }
+        return targets;
+    }
+
+    /** @return the port of a {@code Depends} item such as {@code curl[ssl]:x64-linux} */
+    private static String port(String depends) {
+        int end = depends.length();
+        int colon = depends.indexOf(':');
+        if (colon >= 0) end = colon;
+        int bracket = depends.indexOf('[');
+        if (bracket >= 0 && bracket < end) end = bracket;
+        return depends.substring(0, end).trim();
+    }
+
+    /** vcpkg writes dependencies on another triplet (host tools) with that triplet */
+    private static boolean isHostDependency(String depends, String triplet) {
+        int colon = depends.indexOf(':');
+        return colon >= 0 && !depends.substring(colon + 1).trim().equals(triplet);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isInstalled(String port) {
+        int id = Arrays.binarySearch(names, port);
+        return id >= 0 && installed.get(id);
+    }
+
+    /**
+     * @return the installed packages that depend on {@code port}, directly or through others, in
+     * name order: what {@code vcpkg remove --recurse} removes along with it
+     */
+    public List<String> dependents(String port) {
+        return walk(port, reverseStart, reverse, true);
+    }
+
+    /** @return the ports not yet installed that installing {@code port} pulls in, in name order */
+    public List<String> missingDependencies(String port) {
+        return walk(port, forwardStart, forward, false);
+    }
+
+    /** @return every port {@code port} depends on, directly or through others, installed or not, in name order */
+    public List<String> requirements(String port) {
+        return walk(port, forwardStart, forward, null);
+    }
+
+    /**
+     * Breadth-first walk that only enters installed ({@code installedSide}) or not installed nodes,
+     * or any node if {@code installedSide} is {@code null}.
+     */
+    private List<String> walk(String port, int[] start, int[] adjacency, Boolean installedSide) {
+        int from = Arrays.binarySearch(names, port);
+        if (from < 0) {
+            return List.of();
+        }
+        var seen = new BitSet(names.length);
+        var queue = new int[names.length];
+        int head = 0, tail = 0;
+        seen.set(from);
+        queue[tail++] = from;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int e = start[node]; e < start[node + 1]; e++) {
+                int next = adjacency[e];
+                if (!seen.get(next) && (installedSide == null || installed.get(next) == installedSide)) {
+                    seen.set(next);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        seen.clear(from);
+        var result = new ArrayList<String>(seen.cardinality());
+        for (int i = seen.nextSetBit(0); i >= 0; i = seen.nextSetBit(i + 1)) {
+            result.add(names[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The packages a machine should have, read from a {@code vcpkg.json}-style file:
+ * <pre>
+ * {
+ *   "dependencies": [ "zlib", "fmt:x64-linux", { "name": "curl", "features": [ "ssl" ] } ],
+ *   "triplets": { "x64-windows": [ "openssl" ] }
+ * }
+ * </pre>
+ * An item of {@code dependencies} applies to every triplet, {@code name:triplet} only to that one;
+ * {@code triplets} lists packages per triplet. A triplet is left alone unless the file names it
+ * or has an item for every triplet, so {@code "triplets": { "x64-linux": [] }} is how to empty
+ * one. A port is wanted with the features its items list, as {@code "features"} or as {@code name[f1,f2]};
+ * versions and platform filters are not evaluated.
+ */
+public class DesiredState {
+    private final List<String> common;
+    private final Map<String, List<String>> byTriplet;
+
+    private DesiredState(List<String> common, Map<String, List<String>> byTriplet) {
+        this.common = common;
+        this.byTriplet = byTriplet;
+    }
+
+    /** @throws IllegalArgumentException if the file is not valid JSON */
+    public static DesiredState load(Path file) throws IOException {
+        return parse(Files.readString(file));
+    }
+
+    static DesiredState parse(String text) {
+        var manifest = Json.object(Json.parse(text));
+        var common = names(Json.array(manifest.get("dependencies")));
+        var byTriplet = new HashMap<String, List<String>>();
+        Json.object(manifest.get("triplets")).forEach((triplet, items) -> byTriplet.put(triplet, names(Json.array(items))));
+        return new DesiredState(common, byTriplet);
+    }
+
+    /** @return {@code name}, {@code name[features]} or either with {@code :triplet} per item */
+    private static List<String> names(List<?> items) {
+        var result = new ArrayList<String>();
+        for (var item : items) {
+            var spec = item instanceof Map ? Json.string(Json.object(item).get("name")) : Json.string(item);
+            if (spec == null || spec.isBlank()) {
+                continue;
+            }
+            spec = spec.trim();
+            if (item instanceof Map) {
+                var features = new ArrayList<String>();
+                for (var feature : Json.array(Json.object(item).get("features"))) {
+                    // vcpkg.json also allows { "name": "ssl", "platform": ... } here
+                    var name = feature instanceof Map ? Json.string(Json.object(feature).get("name")) : Json.string(feature);
+                    if (name != null && !name.isBlank()) {
+                        features.add(name.trim());
+                    }
+                }
+                if (!features.isEmpty()) {
+                    var triplet = InstallScheduler.triplet(spec);
+                    var name = triplet == null ? spec : spec.substring(0, spec.length() - triplet.length() - 1);
+                    spec = name + "[" + String.join(",", features) + "]" + (triplet == null ? "" : ":" + triplet);
+                }
+            }
+            result.add(spec);
+        }
+        return result;
+    }
+
+    /**
+     * @return the ports wanted for {@code triplet}, each with the features wanted for it (without
+     * {@code core}, sorted, empty for none), or {@code null} if the file does not cover the triplet
+     */
+    public Map<String, Set<String>> ports(String triplet) {
+        var own = byTriplet.get(triplet);
+        boolean covered = own != null;
+        var result = new TreeMap<String, Set<String>>();
+        for (var spec : common) {
+            var specTriplet = InstallScheduler.triplet(spec);
+            if (specTriplet == null || specTriplet.equals(triplet)) {
+                add(result, specTriplet == null ? spec : spec.substring(0, spec.length() - specTriplet.length() - 1));
+                covered = true;
+            }
+        }
+        if (own != null) {
+            own.forEach(spec -> add(result, spec.replaceFirst(":[^\\]]*$", "")));
+        }
+        return covered ? result : null;
+    }
+
+    /** Adds {@code name} or {@code name[f1,f2]}; items naming the same port merge their features. */
+    private static void add(Map<String, Set<String>> ports, String spec) {
+        int bracket = spec.indexOf('[');
+        var name = (bracket < 0 ? spec : spec.substring(0, bracket)).trim();
+        var features = ports.computeIfAbsent(name, n -> new TreeSet<>());
+        if (bracket >= 0) {
+            int close = spec.indexOf(']', bracket);
+            for (var feature : spec.substring(bracket + 1, close < 0 ? spec.length() : close).split(",")) {
+                feature = feature.trim();
+                if (!feature.isEmpty() && !feature.equals("core")) {
+                    features.add(feature);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Command line front end for scripts and CI agents: {@code --headless install|remove|upgrade|list|sync}
+ * drives the same {@link Storage} as the window without loading any Swing class. Every result is
+ * printed as soon as it is known, one line per event; {@code --json} makes each line a JSON object.
+ */
+public class Headless {
+    static final String USAGE =
+            "usage: --headless [--json] install <package>... | remove [--recurse] <package>... | upgrade | list"
+                    + " | sync [--dry-run] [<desired state file>]";
+
+    private final PrintStream out;
+    private final boolean json;
+    private final Storage storage = new Storage((snapshot, diff) -> { }, false);
+
+    private Headless(PrintStream out, boolean json) {
+        this.out = out;
+        this.json = json;
+    }
+
+    /**
+     * @param args the arguments after {@code --headless}; packages are {@code name} or {@code name:triplet}
+     * @return the exit code: 0 on success, 1 if a package failed, 2 for bad arguments
+     */
+    public static int run(String[] args, PrintStream out) {
+        var words = new ArrayList<String>();
+        boolean json = false;
+        boolean recurse = false;
+        boolean dryRun = false;
+        for (var arg : args) {
+            switch (arg) {
+                case "--json": json = true; break;
+                case "--recurse": recurse = true; break;
+                case "--dry-run": dryRun = true; break;
+                default: words.add(arg);
+            }
+        }
+        var command = words.isEmpty() ? "" : words.remove(0);
+        boolean needsPackages = command.equals("install") || command.equals("remove");
+        boolean desiredState = command.equals("sync") && words.size() == 1;
+        if (!desiredState && (needsPackages == words.isEmpty()
+                || !needsPackages && !command.equals("upgrade") && !command.equals("list") && !command.equals("sync"))) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        var headless = new Headless(out, json);
+        try {
+            switch (command) {
+                case "install": return headless.apply(words, true, false);
+                case "remove": return headless.apply(words, false, recurse);
+                case "upgrade": return headless.upgrade();
+                case "list": return headless.list();
+                default: return desiredState ? headless.sync(Path.of(words.get(0)), dryRun) : headless.sync();
+            }
+        } finally {
+            headless.storage.shutdown();
+        }
+    }
+
+    /** Installs ({@code install}) or removes the packages named by {@code specs} in one plan. */
+    private int apply(List<String> specs, boolean install, boolean recurse) {
+        long start = System.nanoTime();
+        if (install) {
+            // the manifests tell which dependencies an install pulls in
+            storage.refreshCatalogs();
+        }
+        storage.updateInfo();
+        var pending = new ArrayList<String>();
+        for (var key : storage.select(specs, install)) {
+            var info = storage.get(key);
+            if (install ? info.toInstall() : info.toRemove()) {
+                pending.add(key);
+                planned(key);
+            } else {
+                emit("skipped", "package", storage.label(key), "reason", install ? "installed" : "not installed");
+            }
+        }
+
+        return execute(pending.size(), recurse, start);
+    }
+
+    /** Runs the rows selected for install or removal, {@code count} of them, and waits for each result. */
+    private int execute(int count, boolean recurse, long start) {
+        var done = new CountDownLatch(count);
+        var failed = new AtomicInteger();
+        storage.installAll(
+                (label, ok) -> finish("installed", label, ok, failed, done),
+                (label, status, dependents, removeRecursiveOrCancel) -> {
+                    if (status != Storage.RemoveStatus.ASK_RECURSIVE) {
+                        finish("removed", label, status == Storage.RemoveStatus.OK, failed, done);
+                    } else if (recurse) {
+                        emit("dependents", "package", label, "message", dependents);
+                        removeRecursiveOrCancel.accept(false);
+                    } else {
+                        emit("dependents", "package", label, "message", dependents);
+                        finish("removed", label, false, failed, done);
+                    }
+                },
+                (label, ok) -> finish("removed", label, ok, failed, done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        emit("done", "ok", count - failed.get(), "failed", failed.get(),
+                "millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    /** Rebuilds the packages that are behind the ports tree, see {@link Storage#upgradeOutdated}. */
+    private int upgrade() {
+        long start = System.nanoTime();
+        storage.updateInfo();
+        storage.refreshCatalogs();
+        var snapshot = storage.getSnapshot();
+        for (int row = 0; row < snapshot.size(); row++) {
+            var info = snapshot.get(row);
+            if (info.isOutdated()) {
+                emit("outdated", "package", storage.label(snapshot.getName(row)),
+                        "version", info.getVersion(), "latest", info.getLatestVersion());
+            }
+        }
+
+        var done = new CountDownLatch(1);
+        var left = new AtomicInteger();
+        var failed = new AtomicInteger();
+        BiConsumer<String, Boolean> onInstalled = (label, ok) -> {
+            if (!ok) {
+                failed.incrementAndGet();
+            }
+            emit("upgraded", "package", label, "ok", ok);
+            if (left.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        };
+        int count = storage.upgradeOutdated(onInstalled,
+                (label, status, dependents, removeRecursiveOrCancel) -> {
+                    if (status == Storage.RemoveStatus.ASK_RECURSIVE) {
+                        // only without a status database; keep the dependents and let the install report
+                        emit("dependents", "package", label, "message", dependents);
+                        removeRecursiveOrCancel.accept(true);
+                    } else if (status == Storage.RemoveStatus.FAIL) {
+                        emit("removed", "package", label, "ok", false);
+                    }
+                },
+                (label, ok) -> { });
+        if (left.addAndGet(count) == 0) {
+            done.countDown();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        emit("done", "ok", count - failed.get(), "failed", failed.get(),
+                "millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Converges the shards to a desired-state file: every install and removal is planned first,
+     * then all of them run as one {@link Storage#installAll}. With {@code dryRun} only the plan is printed.
+     */
+    private int sync(Path file, boolean dryRun) {
+        long start = System.nanoTime();
+        DesiredState desired;
+        try {
+            desired = DesiredState.load(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("cannot read " + file + ": " + e.getMessage());
+            return 2;
+        }
+        var keys = storage.planDesired(desired);
+        keys.forEach(this::planned);
+        if (dryRun || keys.isEmpty()) {
+            emit("done", "planned", keys.size(), "millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return 0;
+        }
+        return execute(keys.size(), false, start);
+    }
+
+    private void planned(String key) {
+        var info = storage.get(key);
+        var action = info.toInstall() ? "install" : "remove";
+        var impact = storage.impact(info);
+        if (impact.isEmpty()) {
+            emit("planned", "package", storage.label(key), "action", action);
+        } else {
+            emit("planned", "package", storage.label(key), "action", action, "also", String.join(",", impact));
+        }
+    }
+
+    private void finish(String event, String label, boolean ok, AtomicInteger failed, CountDownLatch done) {
+        if (!ok) {
+            failed.incrementAndGet();
+        }
+        emit(event, "package", label, "ok", ok);
+        done.countDown();
+    }
+
+    /** Prints the installed packages of every shard. */
+    private int list() {
+        storage.updateInfo();
+        var snapshot = storage.getSnapshot();
+        for (int row = 0; row < snapshot.size(); row++) {
+            var info = snapshot.get(row);
+            var shard = info.getShard();
+            emit("package", "name", info.getName(), "version", info.getVersion(),
+                    "status", info.getStatus().name().toLowerCase(Locale.ROOT),
+                    "triplet", shard == null ? null : shard.getTriplet(),
+                    "root", shard == null || shard.getRoot() == null ? null : shard.getRoot().toString(),
+                    "description", info.getDescription());
+        }
+        return 0;
+    }
+
+    /** Refreshes the catalogs and installed sets and writes the startup snapshots. */
+    private int sync() {
+        long start = System.nanoTime();
+        storage.sync();
+        var snapshot = storage.getSnapshot();
+        for (var shard : storage.getShards()) {
+            int installed = 0;
+            for (int row = 0; row < snapshot.size(); row++) {
+                if (snapshot.get(row).getShard() == shard) {
+                    installed++;
+                }
+            }
+            emit("synced", "shard", shard.getLabel(), "installed", installed);
+        }
+        emit("done", "millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return 0;
+    }
+
+    /** @param fields alternating names and values */
+    private void emit(String event, Object... fields) {
+        String line;
+        if (json) {
+            var values = new LinkedHashMap<String, Object>();
+            values.put("event", event);
+            for (int i = 0; i < fields.length; i += 2) {
+                values.put((String) fields[i], fields[i + 1]);
+            }
+            line = Json.write(values);
+        } else {
+            var sj = new StringJoiner(" ").add(event);
+            for (int i = 1; i < fields.length; i += 2) {
+                var value = fields[i];
+                if (value instanceof Boolean) {
+                    sj.add((Boolean) value ? "ok" : "failed");
+                } else if (value instanceof Number) {
+                    sj.add(fields[i - 1] + "=" + value);
+                } else if (value != null && !value.toString().isEmpty()) {
+                    sj.add(value.toString().replace('\n', ' '));
+                }
+            }
+            line = sj.toString();
+        }
+        out.println(line);
+    }
+}
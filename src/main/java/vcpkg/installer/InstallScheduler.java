@@ -0,0 +1,304 @@
+package vcpkg.installer;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Turns a selection of packages into an execution plan: one group per vcpkg root and triplet,
+ * removals first, then the group's installs coalesced into as few invocations as possible.
+ * Installs that can be restored from the binary cache form a first phase: every group restores
+ * its cached packages, and source builds start only once all groups are done restoring, so
+ * most packages come back quickly. Groups are independent and each runs on its own thread; how
+ * many vcpkg processes actually run at once is up to the permits in {@link CommandLocks}. With
+ * duration estimates a plan can be ordered longest-first or shortest-first, see {@link Order}.
+ * <p>
+ * With prefetching, the sources of every build are fetched by separate download-only processes
+ * from the start, in build order. A build invocation waits only for the sources of its first
+ * package; the rest keep downloading while it compiles. A package the plan removes and installs
+ * again (an upgrade) is downloaded only once its group's removals are done.
+ */
+public class InstallScheduler {
+    public interface Backend {
+        /** Removes one package; blocks until vcpkg finishes and reports the result itself. */
+        void remove(String root, String triplet, String name);
+
+        /**
+         * Installs all packages with one vcpkg invocation and reports each package's result.
+         *
+         * @param restore {@code true} if the packages are expected to come from the binary cache
+         */
+        void install(String root, String triplet, List<String> names, boolean restore);
+
+        /** Fetches the sources of one package without building it; a failure is left to the build. */
+        void download(String root, String triplet, String name);
+
+        /**
+         * Reports the packages of a {@link #remove} ({@code removal}) or {@link #install} call that
+         * threw instead of reporting, so their rows do not stay busy; the rest of the plan goes on.
+         */
+        void failed(String root, String triplet, List<String> names, boolean removal, RuntimeException error);
+    }
+
+    public interface Estimator {
+        long millis(String root, String name, BuildHistory.Operation operation);
+    }
+
+    public enum Order {
+        /** Longest groups and packages first, each group's installs in one invocation: best total time. */
+        LONGEST_FIRST,
+        /** Shortest first, one invocation per build, so quick packages are done and reported early. */
+        SHORTEST_FIRST,
+    }
+
+    public static class Group {
+        private final String root;
+        private final String triplet;
+        private final List<String> removals = new ArrayList<>();
+        private final List<String> restores = new ArrayList<>();
+        private final List<String> installs = new ArrayList<>();
+        private long restoreMillis = 0;
+        private long buildMillis = 0;
+
+        Group(String root, String triplet) {
+            this.root = root;
+            this.triplet = triplet;
+        }
+
+        public String getRoot() {
+            return root;
+        }
+
+        /** @return {@code null} for vcpkg's default triplet */
+        public String getTriplet() {
+            return triplet;
+        }
+
+        public List<String> getRemovals() {
+            return removals;
+        }
+
+        /** @return installs expected to be restored from the binary cache */
+        public List<String> getRestores() {
+            return restores;
+        }
+
+        /** @return installs that build from source */
+        public List<String> getInstalls() {
+            return installs;
+        }
+
+        /** @return the estimated duration set by {@link Plan#order}, {@code 0} before */
+        public long getEstimateMillis() {
+            return restoreMillis + buildMillis;
+        }
+    }
+
+    public static class Plan {
+        private final Map<String, Group> groups = new LinkedHashMap<>();
+        private Order order = Order.LONGEST_FIRST;
+        private boolean prefetch = false;
+
+        public Collection<Group> getGroups() {
+            return groups.values();
+        }
+
+        public boolean isEmpty() {
+            return groups.isEmpty();
+        }
+
+        private Group group(String root, String triplet) {
+            return groups.computeIfAbsent(root + "|" + triplet, k -> new Group(root, triplet));
+        }
+
+        public void addInstall(String root, String name) {
+            group(root, triplet(name)).installs.add(name);
+        }
+
+        /** Adds an install whose archive is in the binary cache. */
+        public void addRestore(String root, String name) {
+            group(root, triplet(name)).restores.add(name);
+        }
+
+        public void addRemoval(String root, String name) {
+            group(root, triplet(name)).removals.add(name);
+        }
+
+        /** Fetches the sources of all builds concurrently ahead of the builds themselves. */
+        public void setPrefetch(boolean prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        /** Sorts the packages of each group and the groups themselves by estimated duration. */
+        public void order(Order order, Estimator estimator) {
+            this.order = order;
+            var sorted = new ArrayList<>(groups.values());
+            for (var group : sorted) {
+                group.restoreMillis = sort(group, group.removals, BuildHistory.Operation.REMOVE, estimator)
+                        + sort(group, group.restores, BuildHistory.Operation.RESTORE, estimator);
+                group.buildMillis = sort(group, group.installs, BuildHistory.Operation.INSTALL, estimator);
+            }
+            sorted.sort(comparator(order, Group::getEstimateMillis));
+            groups.clear();
+            sorted.forEach(group -> groups.put(group.root + "|" + group.triplet, group));
+        }
+
+        /** @return the estimated time until both phases of all groups finish on {@code lanes} parallel workers */
+        public long estimateMillis(int lanes) {
+            return makespan(lanes, group -> group.restoreMillis) + makespan(lanes, group -> group.buildMillis);
+        }
+
+        private long makespan(int lanes, Function<Group, Long> duration) {
+            var load = new PriorityQueue<Long>();
+            for (int i = 0; i < Math.max(1, lanes); i++) {
+                load.add(0L);
+            }
+            groups.values().stream()
+                    .map(duration)
+                    .sorted(Comparator.reverseOrder())
+                    .forEach(millis -> load.add(load.poll() + millis));
+            return load.stream().mapToLong(Long::longValue).max().orElse(0);
+        }
+
+        private long sort(Group group, List<String> names, BuildHistory.Operation operation, Estimator estimator) {
+            var durations = new HashMap<String, Long>();
+            names.forEach(name -> durations.put(name, estimator.millis(group.root, name, operation)));
+            names.sort(comparator(order, durations::get));
+            return durations.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        private static <T> Comparator<T> comparator(Order order, Function<T, Long> duration) {
+            Comparator<T> ascending = Comparator.comparing(duration);
+            return order == Order.LONGEST_FIRST ? ascending.reversed() : ascending;
+        }
+    }
+
+    private final ExecutorService workers = Tasks.newPerTaskExecutor("vcpkg-install");
+
+    public void execute(Plan plan, Backend backend) {
+        var removed = new HashMap<Group, CountDownLatch>();
+        plan.getGroups().forEach(group -> removed.put(group, new CountDownLatch(1)));
+        var downloads = plan.prefetch ? prefetch(plan, backend, removed) : Map.<String, Future<?>>of();
+        var restored = new CountDownLatch(plan.groups.size());
+        for (var group : plan.getGroups()) {
+            workers.submit(() -> {
+                try {
+                    try {
+                        group.removals.forEach(name -> remove(backend, group, name));
+                    } finally {
+                        removed.get(group).countDown();
+                    }
+                    if (!group.restores.isEmpty()) {
+                        install(backend, group, group.restores, true);
+                    }
+                } finally {
+                    restored.countDown();
+                }
+
+                try {
+                    restored.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (plan.order == Order.SHORTEST_FIRST) {
+                    for (var name : group.installs) {
+                        if (!await(downloads.get(downloadKey(group, name)))) return;
+                        install(backend, group, List.of(name), false);
+                    }
+                } else if (!group.installs.isEmpty()) {
+                    if (!await(downloads.get(downloadKey(group, group.installs.get(0))))) return;
+                    install(backend, group, group.installs, false);
+                }
+            });
+        }
+    }
+
+    private static void remove(Backend backend, Group group, String name) {
+        try {
+            backend.remove(group.root, group.triplet, name);
+        } catch (RuntimeException e) {
+            backend.failed(group.root, group.triplet, List.of(name), true, e);
+        }
+    }
+
+    private static void install(Backend backend, Group group, List<String> names, boolean restore) {
+        try {
+            backend.install(group.root, group.triplet, names, restore);
+        } catch (RuntimeException e) {
+            backend.failed(group.root, group.triplet, names, false, e);
+        }
+    }
+
+    /** The same package can be built in several roots and triplets at once. */
+    private static String downloadKey(Group group, String name) {
+        return group.root + "|" + group.triplet + "|" + name;
+    }
+
+    /**
+     * Starts one download per build, taking the groups' builds round-robin in their planned order.
+     * A package that is also being removed waits for its group's {@code removed} latch: downloading
+     * next to {@code vcpkg remove} of the same package would race it.
+     */
+    private Map<String, Future<?>> prefetch(Plan plan, Backend backend, Map<Group, CountDownLatch> removed) {
+        var downloads = new HashMap<String, Future<?>>();
+        int rounds = plan.groups.values().stream().mapToInt(group -> group.installs.size()).max().orElse(0);
+        for (int i = 0; i < rounds; i++) {
+            for (var group : plan.getGroups()) {
+                if (i < group.installs.size()) {
+                    var name = group.installs.get(i);
+                    boolean reinstall = group.removals.contains(name);
+                    downloads.put(downloadKey(group, name), workers.submit(() -> {
+                        if (reinstall) {
+                            removed.get(group).await();
+                        }
+                        backend.download(group.root, group.triplet, name);
+                        return null;
+                    }));
+                }
+            }
+        }
+        return downloads;
+    }
+
+    /** @return {@code false} if interrupted while waiting; a failed download still lets the build try */
+    private static boolean await(Future<?> download) {
+        if (download == null) {
+            return true;
+        }
+        try {
+            download.get();
+            return true;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    public void submit(Runnable task) {
+        workers.submit(task);
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /** Interrupts running groups, which kills their vcpkg processes. */
+    public void shutdownNow() {
+        workers.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    /** @return the triplet of a {@code name:triplet} package spec, or {@code null} */
+    static String triplet(String name) {
+        int colon = name.lastIndexOf(':');
+        return colon < 0 ? null : name.substring(colon + 1);
+    }
+}
@@ -0,0 +1,154 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Calls {@code onChange} when the vcpkg installed database ({@code installed/vcpkg/status} and
+ * {@code installed/vcpkg/updates}) changes. File system events are debounced; a slow poll of the
+ * same files covers file systems that never deliver events.
+ */
+public class InstalledWatcher implements AutoCloseable {
+    private final Path databaseDir;
+    private final ScheduledExecutorService scheduler;
+    private final Runnable onChange;
+
+    private WatchService watchService = null;
+    private WatchKey updatesKey = null;
+    private Thread watchThread = null;
+    private ScheduledFuture<?> pending = null;
+    private ScheduledFuture<?> poll = null;
+    private String lastStamp;
+
+    public InstalledWatcher(Path installedDir, ScheduledExecutorService scheduler, Runnable onChange) {
+        this.databaseDir = installedDir.resolve("vcpkg");
+        this.scheduler = scheduler;
+        this.onChange = onChange;
+        this.lastStamp = stamp();
+    }
+
+    public boolean isWatching() {
+        return watchService != null;
+    }
+
+    public synchronized void start() {
+        try {
+            watchService = databaseDir.getFileSystem().newWatchService();
+            databaseDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            registerUpdates(watchService);
+
+            watchThread = Tasks.threadFactory("vcpkg-installed-watcher").newThread(this::watchLoop);
+            watchThread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            closeWatchService();
+        }
+
+        poll = scheduler.scheduleWithFixedDelay(
+                this::checkForChange, Config.INSTALLED_POLL_SECONDS, Config.INSTALLED_POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** Stops watching and waits briefly for the watch thread to exit. */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (poll != null) poll.cancel(false);
+            if (pending != null) pending.cancel(false);
+            closeWatchService();
+            thread = watchThread;
+            watchThread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void watchLoop() {
+        var service = watchService;
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            key.pollEvents();
+            key.reset();
+            registerUpdates(service);
+            debounce();
+        }
+    }
+
+    private void registerUpdates(WatchService service) {
+        var updates = databaseDir.resolve("updates");
+        if ((updatesKey == null || !updatesKey.isValid()) && Files.isDirectory(updates)) {
+            try {
+                updatesKey = updates.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            } catch (IOException | ClosedWatchServiceException ignored) { }
+        }
+    }
+
+    private synchronized void debounce() {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        try {
+            pending = scheduler.schedule(this::checkForChange, Config.INSTALLED_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    private void checkForChange() {
+        var stamp = stamp();
+        synchronized (this) {
+            if (Objects.equals(stamp, lastStamp)) {
+                return;
+            }
+            lastStamp = stamp;
+        }
+        onChange.run();
+    }
+
+    /** @return the status file's time and size and the names of the update files, {@code null} if there is no status file */
+    private String stamp() {
+        var status = databaseDir.resolve("status");
+        String statusStamp;
+        try {
+            statusStamp = Files.getLastModifiedTime(status).toMillis() + ":" + Files.size(status);
+        } catch (IOException e) {
+            return null;
+        }
+        // a fresh install has no updates directory until vcpkg first writes one
+        try (var updates = Files.list(databaseDir.resolve("updates"))) {
+            return statusStamp + ":" + updates.map(p -> p.getFileName().toString())
+                    .filter(StatusDatabase::isUpdate)
+                    .sorted()
+                    .collect(Collectors.joining(","));
+        } catch (IOException e) {
+            return statusStamp + ":";
+        }
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) { }
+            watchService = null;
+        }
+    }
+}
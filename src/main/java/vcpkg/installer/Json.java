@@ -0,0 +1,215 @@
+package vcpkg.installer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader for vcpkg manifests: objects become {@code Map}, arrays {@code List},
+ * numbers {@code Double}, plus {@code String}, {@code Boolean} and {@code null}. {@link #write}
+ * goes the other way for flat objects (headless output, metrics).
+ */
+public class Json {
+    private final String text;
+    private int pos = 0;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    public static Object parse(String text) {
+        var json = new Json(text);
+        json.skipSpaces();
+        var value = json.value();
+        json.skipSpaces();
+        if (json.pos != text.length()) {
+            throw json.error("trailing characters");
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> object(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : Map.of();
+    }
+
+    public static List<?> array(Object value) {
+        return value instanceof List ? (List<?>) value : List.of();
+    }
+
+    public static String string(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+
+    /** @return {@code values} as one JSON object; values may be strings, numbers, booleans or {@code null} */
+    public static String write(Map<String, ?> values) {
+        var sb = new StringBuilder("{");
+        values.forEach((key, value) -> {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(quote(key)).append(':');
+            if (value == null || value instanceof Number || value instanceof Boolean) {
+                sb.append(value);
+            } else {
+                sb.append(quote(value.toString()));
+            }
+        });
+        return sb.append('}').toString();
+    }
+
+    public static String quote(String s) {
+        var sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON: " + message + " at " + pos);
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private void expect(char c) {
+        if (pos >= text.length() || text.charAt(pos) != c) {
+            throw error("expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private Object value() {
+        if (pos >= text.length()) {
+            throw error("unexpected end");
+        }
+        switch (text.charAt(pos)) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+        }
+        return number();
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) {
+            throw error("unexpected token");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private Map<String, Object> object() {
+        var result = new LinkedHashMap<String, Object>();
+        expect('{');
+        skipSpaces();
+        if (pos < text.length() && text.charAt(pos) == '}') {
+            pos++;
+            return result;
+        }
+        while (true) {
+            skipSpaces();
+            var key = string();
+            skipSpaces();
+            expect(':');
+            skipSpaces();
+            result.put(key, value());
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == ',') {
+                pos++;
+                continue;
+            }
+            expect('}');
+            return result;
+        }
+    }
+
+    private List<Object> array() {
+        var result = new ArrayList<>();
+        expect('[');
+        skipSpaces();
+        if (pos < text.length() && text.charAt(pos) == ']') {
+            pos++;
+            return result;
+        }
+        while (true) {
+            skipSpaces();
+            result.add(value());
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == ',') {
+                pos++;
+                continue;
+            }
+            expect(']');
+            return result;
+        }
+    }
+
+    private String string() {
+        expect('"');
+        var sb = new StringBuilder();
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                break;
+            }
+            char e = text.charAt(pos++);
+            switch (e) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u': {
+                    if (pos + 4 > text.length()) {
+                        throw error("bad unicode escape");
+                    }
+                    sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                }
+                break;
+                default: sb.append(e);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private Double number() {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("unexpected character");
+        }
+        return Double.valueOf(text.substring(start, pos));
+    }
+}
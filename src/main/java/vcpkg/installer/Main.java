@@ -1,17 +1,14 @@
 package vcpkg.installer;
 
-import com.formdev.flatlaf.intellijthemes.materialthemeuilite.FlatMonokaiProContrastIJTheme;
-
-import javax.swing.*;
+import java.util.Arrays;
 
 public class Main {
 
     public static void main(String[] args) {
-        FlatMonokaiProContrastIJTheme.install();
-        JFrame jf = new JFrame("VCPKG Installer");
-        jf.setSize(800, 600);
-        jf.setContentPane(new UI().getRootComponent());
-        jf.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-        jf.setVisible(true);
+        if (args.length > 0 && args[0].equals("--headless")) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(Headless.run(Arrays.copyOfRange(args, 1, args.length), System.out));
+        }
+        UI.launch();
     }
 }
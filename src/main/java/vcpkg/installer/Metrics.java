@@ -0,0 +1,272 @@
+package vcpkg.installer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide timers and gauges: vcpkg invocations per command, lock waits, executor queues,
+ * refreshes and table updates. Each metric is registered as an MXBean named
+ * {@code vcpkg.installer:type=Timer|Gauge,name=...}, so JConsole or VisualVM can show it;
+ * {@link #startDump} also appends all of them periodically as one JSON object per line.
+ */
+public class Metrics {
+    private static final String DOMAIN = "vcpkg.installer";
+
+    public interface TimerMXBean {
+        long getCount();
+
+        double getTotalMillis();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+
+        double getP50Millis();
+
+        double getP90Millis();
+
+        double getP99Millis();
+
+        void reset();
+    }
+
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    /**
+     * Latency recorder. Samples go into nanosecond buckets, four per power of two, so recording
+     * is a few atomic adds and percentiles overestimate by at most 25%.
+     */
+    public static class Timer implements TimerMXBean {
+        private static final int SUB_BUCKETS = 4;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+            buckets.incrementAndGet(bucket(nanos));
+        }
+
+        /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value. */
+        public void stop(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getTotalMillis() {
+            return millis(total.sum());
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : millis(total.sum()) / n;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return millis(max.get());
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentile(0.5);
+        }
+
+        @Override
+        public double getP90Millis() {
+            return percentile(0.9);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentile(0.99);
+        }
+
+        @Override
+        public void reset() {
+            count.reset();
+            total.reset();
+            max.set(0);
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        private double percentile(double q) {
+            long n = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                n += buckets.get(i);
+            }
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length() && n > 0; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return millis(Math.min(upperBound(i), max.get()));
+                }
+            }
+            return 0;
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 2;
+            int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            return exponent >= Long.SIZE - 2 ? Long.MAX_VALUE : ((long) (SUB_BUCKETS + 1 + sub) << (exponent - 2)) - 1;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+
+        private String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"count\":%d,\"meanMs\":%.3f,\"p50Ms\":%.3f,\"p90Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}",
+                    getCount(), getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper = null;
+
+    public static Timer timer(String name) {
+        var timer = timers.get(name);
+        if (timer != null) {
+            return timer;
+        }
+        return timers.computeIfAbsent(name, n -> {
+            var created = new Timer();
+            register("Timer", n, created, TimerMXBean.class);
+            return created;
+        });
+    }
+
+    /** Registers or replaces the gauge {@code name}. */
+    public static void gauge(String name, LongSupplier value) {
+        if (gauges.put(name, value) == null) {
+            GaugeMXBean bean = () -> {
+                var supplier = gauges.get(name);
+                return supplier == null ? 0 : supplier.getAsLong();
+            };
+            register("Gauge", name, bean, GaugeMXBean.class);
+        }
+    }
+
+    /** Drops the gauge {@code name} unless it has been replaced by another supplier meanwhile. */
+    public static void removeGauge(String name, LongSupplier value) {
+        if (gauges.remove(name, value)) {
+            try {
+                var server = ManagementFactory.getPlatformMBeanServer();
+                var objectName = objectName("Gauge", name);
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (JMException ignored) { }
+        }
+    }
+
+    /**
+     * Writes a JSON line with every metric each {@code periodSeconds}, appended to {@code file}
+     * or printed to stderr if it is {@code null}. Does nothing if a dump is already running.
+     */
+    public static synchronized void startDump(long periodSeconds, Path file) {
+        if (dumper != null || periodSeconds <= 0) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "vcpkg-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            var line = toJson();
+            if (file == null) {
+                System.err.println(line);
+                return;
+            }
+            try {
+                Files.writeString(file, line + System.lineSeparator(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("metrics dump to " + file + " failed: " + e);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static String toJson() {
+        var timerJson = new StringJoiner(",", "{", "}");
+        new TreeMap<>(timers).forEach((name, timer) -> timerJson.add(Json.quote(name) + ":" + timer.toJson()));
+        var gaugeJson = new StringJoiner(",", "{", "}");
+        new TreeMap<String, LongSupplier>(gauges).forEach((name, gauge) ->
+                gaugeJson.add(Json.quote(name) + ":" + gauge.getAsLong()));
+        return "{\"time\":" + System.currentTimeMillis() + ",\"timers\":" + timerJson + ",\"gauges\":" + gaugeJson + "}";
+    }
+
+    /** @return the verb of a vcpkg command line ({@code search}, {@code install}, ..., {@code download} for prefetches) */
+    static String verb(List<String> command) {
+        if (command.contains("--only-downloads")) {
+            return "download";
+        }
+        return command.size() > 1 ? command.get(1) : "unknown";
+    }
+
+    private static <T> void register(String type, String name, T bean, Class<T> iface) {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var objectName = objectName(type, name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(bean, iface, true), objectName);
+        } catch (JMException | SecurityException ignored) {
+            // metrics still work through toJson()
+        }
+    }
+
+    private static ObjectName objectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+}
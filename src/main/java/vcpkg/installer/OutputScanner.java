@@ -0,0 +1,105 @@
+package vcpkg.installer;
+
+/**
+ * Column scanner for {@code vcpkg list} and {@code vcpkg search} output. Lines are copied into a
+ * reusable buffer and split by hand: a name column ({@code name}, {@code name[feature]}, with
+ * {@code :triplet} in list output), an optional version column and the description. A column
+ * counts as the version when it is followed by at least three spaces, as vcpkg pads its columns.
+ * An instance is not thread-safe; use one per parse.
+ */
+public class OutputScanner {
+    public interface Sink {
+        /** {@code feature} and {@code triplet} may be {@code null}, {@code version} may be {@code null}. */
+        void accept(String name, String feature, String triplet, String version, String description);
+    }
+
+    public enum Format {
+        LIST,
+        SEARCH,
+    }
+
+    private final Format format;
+    private char[] buffer = new char[256];
+
+    public OutputScanner(Format format) {
+        this.format = format;
+    }
+
+    public static String displayName(String name, String feature) {
+        return feature == null ? name : name + "[" + feature + "]";
+    }
+
+    /** @return {@code false} if the line is not a package line */
+    public boolean scan(String line, Sink sink) {
+        int length = line.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        line.getChars(0, length, buffer, 0);
+        var buf = buffer;
+
+        int pos = 0;
+        int nameEnd;
+        int tripletStart = -1;
+        int tripletEnd = -1;
+        if (format == Format.LIST) {
+            while (pos < length && buf[pos] != ':' && !isSpace(buf[pos])) pos++;
+            if (pos == 0 || pos >= length || buf[pos] != ':') return false;
+            nameEnd = pos++;
+            tripletStart = pos;
+            while (pos < length && !isSpace(buf[pos])) pos++;
+            tripletEnd = pos;
+            if (tripletEnd == tripletStart) return false;
+        } else {
+            while (pos < length && !isSpace(buf[pos])) pos++;
+            if (pos == 0) return false;
+            nameEnd = pos;
+        }
+
+        int afterName = pos;
+        while (pos < length && isSpace(buf[pos])) pos++;
+        int nameGap = pos - afterName;
+        if (nameGap == 0) return false;
+
+        int versionStart = -1;
+        int versionEnd = -1;
+        int tokenStart = pos;
+        while (pos < length && !isSpace(buf[pos])) pos++;
+        int tokenEnd = pos;
+        while (pos < length && isSpace(buf[pos])) pos++;
+        if (tokenEnd > tokenStart && pos - tokenEnd >= 3) {
+            versionStart = tokenStart;
+            versionEnd = tokenEnd;
+        } else if (nameGap < 2) {
+            return false;
+        } else {
+            pos = tokenStart;
+        }
+
+        int featureStart = -1;
+        int featureEnd = -1;
+        int baseEnd = nameEnd;
+        if (nameEnd > 0 && buf[nameEnd - 1] == ']') {
+            for (int i = 0; i < nameEnd - 1; i++) {
+                if (buf[i] == '[') {
+                    baseEnd = i;
+                    featureStart = i + 1;
+                    featureEnd = nameEnd - 1;
+                    break;
+                }
+            }
+        }
+
+        sink.accept(
+                new String(buf, 0, baseEnd),
+                featureStart < 0 ? null : new String(buf, featureStart, featureEnd - featureStart),
+                tripletStart < 0 ? null : new String(buf, tripletStart, tripletEnd - tripletStart),
+                versionStart < 0 ? null : new String(buf, versionStart, versionEnd - versionStart),
+                new String(buf, pos, length - pos));
+        return true;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -1,71 +1,47 @@
 package vcpkg.installer;
 
-import javax.swing.*;
-import java.awt.*;
-import java.util.concurrent.atomic.AtomicReference;
-
 public class PackageInfo {
-    public JCheckBox getUi() {
-        return ui;
-    }
+    /** Returned for rows that do not exist (any more); shared, so its setters change nothing */
+    public static final PackageInfo MISSING = new PackageInfo("", "", "", Status.REMOVING);
 
     public enum Status {
         INSTALLED,
         NOT_INSTALLED,
         INSTALLING,
         REMOVING,
+        /** Waiting for its sources to be fetched before it is built */
+        DOWNLOADING,
     }
 
+    private static final Status[] STATUSES = Status.values();
+    private static final int STATUS_MASK = 0b111;
+    private static final int SELECTED = 0b1000;
+    private static final int OUTDATED = 0b10000;
+
     private final String name;
     private final String version;
     private final String description;
-    private final AtomicReference<Status> status = new AtomicReference<>(Status.NOT_INSTALLED);
-    private final JCheckBox ui = new JCheckBox();
-
-    {
-        ui.setFont(ui.getFont().deriveFont(Font.BOLD));
-
-        ui.addActionListener(event -> update());
-
-    }
-
-    private void update() {
-        switch (status.get()) {
-            case INSTALLED:{
-                ui.setForeground(Color.RED);
-                ui.setText(ui.isSelected() ? "" : "to remove");
-                ui.setEnabled(true);
-            }
-            break;
-
-            case NOT_INSTALLED: {
-                ui.setForeground(Color.GREEN);
-                ui.setText(ui.isSelected() ? "to install" : "");
-                ui.setEnabled(true);
-            }
-            break;
-
-            case REMOVING: {
-                ui.setText("removing");
-                ui.setEnabled(false);
-            }
-            break;
-
-            case INSTALLING: {
-                ui.setText("installing");
-                ui.setEnabled(false);
-            }
-            break;
-        }
-    }
+    private final Shard shard;
+    private volatile String latestVersion = null;
+    private volatile byte state;
 
     public PackageInfo(String name, String version, String description, Status status) {
-        this.name = name;
-        this.version = version;
+        this(name, version, description, status, null);
+    }
+
+    public PackageInfo(String name, String version, String description, Status status, Shard shard) {
+        this.name = name == null ? null : name.intern();
+        this.version = version == null ? null : version.intern();
         this.description = description;
-        this.status.set(status);
-        ui.setSelected(status == Status.INSTALLED);
-        update();
+        this.shard = shard;
+        setState(status, status == Status.INSTALLED);
+    }
+
+    private void setState(Status status, boolean selected) {
+        if (this == MISSING) {
+            return;
+        }
+        state = (byte) (status.ordinal() | (selected ? SELECTED : 0) | (state & OUTDATED));
     }
 
     public String getVersion() {
@@ -80,6 +56,29 @@ public class PackageInfo {
         return name;
     }
 
+    /** @return the version in the ports tree if the installed one differs from it, otherwise {@code null} */
+    public String getLatestVersion() {
+        return latestVersion;
+    }
+
+    public boolean isOutdated() {
+        return (state & OUTDATED) != 0;
+    }
+
+    /** @param latestVersion {@code null} if the package is up to date */
+    public synchronized void setLatestVersion(String latestVersion) {
+        if (this == MISSING) {
+            return;
+        }
+        this.latestVersion = latestVersion;
+        state = (byte) (latestVersion == null ? state & ~OUTDATED : state | OUTDATED);
+    }
+
+    /** @return the root and triplet the package belongs to, {@code null} outside {@link Storage} */
+    public Shard getShard() {
+        return shard;
+    }
+
     @Override
     public String toString() {
         if (version != null) {
@@ -88,43 +87,64 @@ public class PackageInfo {
         return name;
     }
 
+    byte getState() {
+        return state;
+    }
+
     public Status getStatus() {
-        return status.get();
+        return STATUSES[state & STATUS_MASK];
+    }
+
+    public synchronized void setStatus(Status status) {
+        setState(status, isSelected());
+    }
+
+    public boolean isSelected() {
+        return (state & SELECTED) != 0;
     }
 
-    public void setStatus(Status status) {
-        this.status.set(status);
-        update();
-        ui.updateUI();
+    /** @return {@code false} if the package is being installed or removed and cannot be toggled */
+    public synchronized boolean setSelected(boolean selected) {
+        var status = getStatus();
+        if (this == MISSING || status == Status.INSTALLING || status == Status.REMOVING || status == Status.DOWNLOADING) {
+            return false;
+        }
+        setState(status, selected);
+        return true;
     }
 
     public boolean toInstall() {
-        return ui.isSelected() && status.get() == Status.NOT_INSTALLED;
+        return isSelected() && getStatus() == Status.NOT_INSTALLED;
     }
 
     public boolean toRemove() {
-        return !ui.isSelected() && status.get() == Status.INSTALLED;
+        return !isSelected() && getStatus() == Status.INSTALLED;
     }
 
     public boolean installed() {
-        return ui.isSelected() && status.get() == Status.INSTALLED;
+        return isSelected() && getStatus() == Status.INSTALLED;
     }
 
     public boolean notInstalled() {
-        return !ui.isSelected() && status.get() == Status.NOT_INSTALLED;
+        return !isSelected() && getStatus() == Status.NOT_INSTALLED;
+    }
+
+    public synchronized void ensureInstalled() {
+        if (!toRemove() && getStatus() != Status.REMOVING) {
+            setState(Status.INSTALLED, true);
+        }
     }
 
-    public void ensureInstalled() {
-        if (!toRemove() && status.get() != Status.REMOVING) {
-            setStatus(Status.INSTALLED);
-            ui.setSelected(true);
+    /** Moves a package whose sources have been fetched from {@code DOWNLOADING} on to {@code INSTALLING}. */
+    public synchronized void ensureDownloaded() {
+        if (getStatus() == Status.DOWNLOADING) {
+            setState(Status.INSTALLING, isSelected());
         }
     }
 
-    public void ensureRemoved() {
-        if (!toInstall()&& status.get() != Status.INSTALLING) {
-            setStatus(Status.NOT_INSTALLED);
-            ui.setSelected(false);
+    public synchronized void ensureRemoved() {
+        if (!toInstall() && getStatus() != Status.INSTALLING && getStatus() != Status.DOWNLOADING) {
+            setState(Status.NOT_INSTALLED, false);
         }
     }
 
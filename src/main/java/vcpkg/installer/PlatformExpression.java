@@ -0,0 +1,124 @@
+package vcpkg.installer;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Evaluates a vcpkg platform expression, e.g. {@code !windows & (x64 | arm64)}, against a triplet
+ * name. Only what the name tells is known: the architecture, the common target systems and the
+ * library linkage of the stock triplets. Anything else ({@code native}, custom triplets, a
+ * malformed expression) is unknown, and an unknown expression counts as a match, so an edge it
+ * guards is kept rather than dropped.
+ */
+public class PlatformExpression {
+    private static final List<String> SYSTEMS = List.of(
+            "windows", "uwp", "mingw", "linux", "osx", "ios", "android", "emscripten", "freebsd", "openbsd");
+
+    private final String text;
+    private final List<String> parts;
+    private int pos = 0;
+
+    private PlatformExpression(String text, String triplet) {
+        this.text = text;
+        this.parts = List.of(triplet.split("-"));
+    }
+
+    /** @return {@code false} only if {@code expression} is certainly false for {@code triplet}; {@code null}s match */
+    public static boolean matches(String expression, String triplet) {
+        if (expression == null || expression.isBlank() || triplet == null || triplet.isEmpty()) {
+            return true;
+        }
+        var parser = new PlatformExpression(expression.toLowerCase(Locale.ROOT), triplet.toLowerCase(Locale.ROOT));
+        try {
+            var value = parser.or();
+            parser.skipSpaces();
+            return parser.pos != parser.text.length() || value == null || value;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    /** {@code a | b}; vcpkg also reads {@code ,} as or */
+    private Boolean or() {
+        var value = and();
+        while (peek() == '|' || peek() == ',') {
+            pos++;
+            var right = and();
+            value = Boolean.TRUE.equals(value) || Boolean.TRUE.equals(right) ? Boolean.TRUE
+                    : value == null || right == null ? null : Boolean.FALSE;
+        }
+        return value;
+    }
+
+    private Boolean and() {
+        var value = not();
+        while (peek() == '&') {
+            pos++;
+            var right = not();
+            value = Boolean.FALSE.equals(value) || Boolean.FALSE.equals(right) ? Boolean.FALSE
+                    : value == null || right == null ? null : Boolean.TRUE;
+        }
+        return value;
+    }
+
+    private Boolean not() {
+        char c = peek();
+        if (c == '!') {
+            pos++;
+            var value = not();
+            return value == null ? null : !value;
+        }
+        if (c == '(') {
+            pos++;
+            var value = or();
+            if (peek() != ')') {
+                throw new IllegalArgumentException("missing ) at " + pos);
+            }
+            pos++;
+            return value;
+        }
+        int start = pos;
+        while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '-'
+                || text.charAt(pos) == '_')) {
+            pos++;
+        }
+        if (start == pos) {
+            throw new IllegalArgumentException("identifier expected at " + pos);
+        }
+        return identifier(text.substring(start, pos));
+    }
+
+    /** @return whether the triplet has the property, {@code null} if its name does not tell */
+    private Boolean identifier(String name) {
+        var arch = parts.get(0);
+        switch (name) {
+            case "x64": return arch.equals("x64");
+            case "x86": return arch.equals("x86");
+            case "arm": return arch.startsWith("arm");
+            case "arm32": return arch.equals("arm");
+            case "arm64": return arch.startsWith("arm64");
+            case "wasm32": return arch.equals("wasm32");
+        }
+        if (SYSTEMS.stream().noneMatch(parts::contains)) {
+            return null;
+        }
+        boolean windows = parts.contains("windows") || parts.contains("uwp") || parts.contains("mingw");
+        switch (name) {
+            case "windows": return windows;
+            case "static": return windows ? parts.contains("static") : !parts.contains("dynamic");
+            case "staticcrt": return windows && !parts.contains("mingw") ? parts.contains("static") && !parts.contains("md") : null;
+        }
+        return SYSTEMS.contains(name) ? parts.contains(name) : null;
+    }
+
+    private char peek() {
+        skipSpaces();
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+}
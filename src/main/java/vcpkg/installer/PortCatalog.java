@@ -0,0 +1,513 @@
+package vcpkg.installer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory catalog of the {@code ports} tree. Manifests are read once in parallel and then
+ * re-read only for port directories whose files changed since the previous {@link #refresh()}.
+ */
+public class PortCatalog {
+    public static class Port {
+        private final String name;
+        private final String version;
+        private final String description;
+        /**
+         * Ports this one depends on for its own triplet: {@code name} or {@code name[features]}, each
+         * followed by the platform expression that limits it, if any, e.g. {@code openssl (!windows)}.
+         * A core port also lists its default features as {@code name[feature]}. Host tools are left out.
+         */
+        private final List<String> dependencies;
+        private final String lowerName;
+        private final String lowerDescription;
+
+        Port(String name, String version, String description) {
+            this(name, version, description, List.of());
+        }
+
+        Port(String name, String version, String description, List<String> dependencies) {
+            this.name = name.intern();
+            this.version = version;
+            this.description = description;
+            this.dependencies = dependencies;
+            this.lowerName = name.toLowerCase(Locale.ROOT);
+            this.lowerDescription = description.toLowerCase(Locale.ROOT);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+    }
+
+    private static class PortDir {
+        final long stamp;
+        final List<Port> ports;
+
+        PortDir(long stamp, List<Port> ports) {
+            this.stamp = stamp;
+            this.ports = ports;
+        }
+    }
+
+    private static class Index {
+        final Port[] ports;
+        final Map<Long, int[]> trigrams;
+        final String[] tokens;
+        final int[][] tokenPostings;
+
+        Index(Port[] ports, Map<Long, int[]> trigrams, String[] tokens, int[][] tokenPostings) {
+            this.ports = ports;
+            this.trigrams = trigrams;
+            this.tokens = tokens;
+            this.tokenPostings = tokenPostings;
+        }
+    }
+
+    private final Path portsDir;
+    private final ConcurrentHashMap<String, PortDir> dirs = new ConcurrentHashMap<>();
+    private volatile Index index = null;
+    private volatile long generation = 0;
+
+    public PortCatalog(Path portsDir) {
+        this.portsDir = portsDir;
+    }
+
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public synchronized void refresh() {
+        List<Path> current;
+        try (var list = Files.list(portsDir)) {
+            current = list.filter(Files::isDirectory).collect(Collectors.toList());
+        } catch (IOException e) {
+            return;
+        }
+
+        var seen = current.stream().map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+        boolean changed = dirs.keySet().removeIf(name -> !seen.contains(name));
+
+        var updated = current.parallelStream()
+            .map(dir -> {
+                var name = dir.getFileName().toString();
+                var stamp = stamp(dir);
+                var known = dirs.get(name);
+                if (known != null && known.stamp == stamp) {
+                    return false;
+                }
+                dirs.put(name, new PortDir(stamp, readPort(dir)));
+                return true;
+            })
+            .reduce(false, Boolean::logicalOr);
+
+        if (changed || updated || index == null) {
+            index = buildIndex(dirs.values());
+            generation++;
+        }
+    }
+
+    /** Writes every port directory with its stamp, so {@link #readFrom} can skip unchanged ones. */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(dirs.size());
+        for (var entry : dirs.entrySet()) {
+            SnapshotStore.writeString(out, entry.getKey());
+            out.writeLong(entry.getValue().stamp);
+            out.writeInt(entry.getValue().ports.size());
+            for (var port : entry.getValue().ports) {
+                SnapshotStore.writeString(out, port.name);
+                SnapshotStore.writeString(out, port.version);
+                SnapshotStore.writeString(out, port.description);
+                out.writeInt(port.dependencies.size());
+                for (var dependency : port.dependencies) {
+                    SnapshotStore.writeString(out, dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the catalog with one written by {@link #writeTo}. The next {@link #refresh()}
+     * re-reads only the directories whose stamp no longer matches.
+     */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        var restored = new HashMap<String, PortDir>(count * 2);
+        for (int i = 0; i < count; i++) {
+            var name = SnapshotStore.readString(in);
+            long stamp = in.readLong();
+            var ports = new Port[in.readInt()];
+            for (int j = 0; j < ports.length; j++) {
+                var portName = SnapshotStore.readString(in);
+                var version = SnapshotStore.readString(in);
+                var description = SnapshotStore.readString(in);
+                var dependencies = new String[in.readInt()];
+                for (int k = 0; k < dependencies.length; k++) {
+                    dependencies[k] = SnapshotStore.readString(in).intern();
+                }
+                ports[j] = new Port(portName, version, description, List.of(dependencies));
+            }
+            restored.put(name, new PortDir(stamp, List.of(ports)));
+        }
+        dirs.clear();
+        dirs.putAll(restored);
+        index = buildIndex(dirs.values());
+        generation++;
+    }
+
+    /** @return the port (or {@code name[feature]}) called {@code name}, or {@code null} */
+    public Port find(String name) {
+        var idx = index;
+        if (idx == null) {
+            return null;
+        }
+        int lo = 0, hi = idx.ports.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = idx.ports[mid].name.compareTo(name);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return idx.ports[mid];
+        }
+        return null;
+    }
+
+    /** @return every port without its features, in name order */
+    public List<Port> ports() {
+        var idx = index;
+        if (idx == null) {
+            return List.of();
+        }
+        var result = new ArrayList<Port>(idx.ports.length);
+        for (var port : idx.ports) {
+            if (port.name.indexOf('[') < 0) {
+                result.add(port);
+            }
+        }
+        return result;
+    }
+
+    /** @return every port and every {@code name[feature]}, in name order */
+    public List<Port> entries() {
+        var idx = index;
+        return idx == null ? List.of() : List.of(idx.ports);
+    }
+
+    public List<Port> search(String query) {
+        var idx = index;
+        if (idx == null) {
+            return List.of();
+        }
+
+        var q = query.toLowerCase(Locale.ROOT).trim();
+        int[] candidates = q.length() >= 3 ? byTrigrams(idx, q) : byPrefix(idx, q);
+
+        var result = new ArrayList<Port>(candidates.length);
+        for (int i : candidates) {
+            var port = idx.ports[i];
+            if (q.length() < 3 || port.lowerName.contains(q) || port.lowerDescription.contains(q)) {
+                result.add(port);
+            }
+        }
+        result.sort(Comparator.<Port>comparingInt(p -> rank(p, q)).thenComparing(p -> p.name));
+        return result;
+    }
+
+    private static int rank(Port port, String q) {
+        if (port.lowerName.equals(q)) return 0;
+        if (port.lowerName.startsWith(q)) return 1;
+        if (port.lowerName.contains(q)) return 2;
+        return 3;
+    }
+
+    private static int[] byTrigrams(Index idx, String q) {
+        int[] result = null;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            var postings = idx.trigrams.get(trigram(q, i));
+            if (postings == null) {
+                return new int[0];
+            }
+            result = result == null ? postings : intersect(result, postings);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    private static int[] byPrefix(Index idx, String q) {
+        if (q.isEmpty()) {
+            return new int[0];
+        }
+        int from = Arrays.binarySearch(idx.tokens, q);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        var ids = new TreeSet<Integer>();
+        for (int i = from; i < idx.tokens.length && idx.tokens[i].startsWith(q); i++) {
+            for (int id : idx.tokenPostings[i]) {
+                ids.add(id);
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        var out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static Index buildIndex(Collection<PortDir> dirs) {
+        var ports = dirs.stream()
+            .flatMap(d -> d.ports.stream())
+            .sorted(Comparator.comparing(p -> p.name))
+            .toArray(Port[]::new);
+
+        var trigrams = new HashMap<Long, int[]>();
+        var trigramSizes = new HashMap<Long, Integer>();
+        var tokens = new HashMap<String, List<Integer>>();
+        var seen = new HashSet<Long>();
+
+        for (int id = 0; id < ports.length; id++) {
+            var port = ports[id];
+            var text = port.lowerName + "\n" + port.lowerDescription;
+
+            seen.clear();
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                var t = trigram(text, i);
+                if (!seen.add(t)) continue;
+                var size = trigramSizes.getOrDefault(t, 0);
+                var postings = trigrams.get(t);
+                if (postings == null) {
+                    postings = new int[4];
+                } else if (postings.length == size) {
+                    postings = Arrays.copyOf(postings, size * 2);
+                }
+                postings[size] = id;
+                trigrams.put(t, postings);
+                trigramSizes.put(t, size + 1);
+            }
+
+            for (var token : text.split("[^\\p{L}\\p{N}]+")) {
+                if (token.isEmpty()) continue;
+                var postings = tokens.computeIfAbsent(token, k -> new ArrayList<>());
+                if (postings.isEmpty() || postings.get(postings.size() - 1) != id) {
+                    postings.add(id);
+                }
+            }
+        }
+        trigrams.replaceAll((t, postings) -> Arrays.copyOf(postings, trigramSizes.get(t)));
+
+        var sortedTokens = tokens.keySet().stream().sorted().toArray(String[]::new);
+        var tokenPostings = new int[sortedTokens.length][];
+        for (int i = 0; i < sortedTokens.length; i++) {
+            tokenPostings[i] = tokens.get(sortedTokens[i]).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new Index(ports, trigrams, sortedTokens, tokenPostings);
+    }
+
+    private static long stamp(Path dir) {
+        long stamp = 0;
+        for (var file : new String[] { "vcpkg.json", "CONTROL" }) {
+            try {
+                var path = dir.resolve(file);
+                if (Files.exists(path)) {
+                    stamp = stamp * 31 + Files.getLastModifiedTime(path).toMillis() + Files.size(path);
+                }
+            } catch (IOException ignored) { }
+        }
+        return stamp;
+    }
+
+    private static List<Port> readPort(Path dir) {
+        try {
+            var manifest = dir.resolve("vcpkg.json");
+            if (Files.exists(manifest)) {
+                return fromManifest(Files.readString(manifest, StandardCharsets.UTF_8));
+            }
+            var control = dir.resolve("CONTROL");
+            if (Files.exists(control)) {
+                return fromControl(Files.readAllLines(control, StandardCharsets.UTF_8));
+            }
+        } catch (IOException | IllegalArgumentException ignored) { }
+        return List.of();
+    }
+
+    static List<Port> fromManifest(String text) {
+        var json = Json.object(Json.parse(text));
+        var name = Json.string(json.get("name"));
+        if (name == null) {
+            return List.of();
+        }
+
+        String version = null;
+        for (var key : new String[] { "version", "version-semver", "version-date", "version-string" }) {
+            if (version == null) version = Json.string(json.get(key));
+        }
+        var portVersion = json.get("port-version");
+        if (version != null && portVersion instanceof Double && (Double) portVersion > 0) {
+            version += "#" + ((Double) portVersion).intValue();
+        }
+
+        var dependencies = new ArrayList<>(dependencies(json.get("dependencies")));
+        for (var feature : Json.array(json.get("default-features"))) {
+            var spec = qualified(feature, name);
+            if (spec != null) {
+                dependencies.add(spec.intern());
+            }
+        }
+        var result = new ArrayList<Port>();
+        result.add(new Port(name, version == null ? "" : version, description(json.get("description")),
+                dependencies.isEmpty() ? List.of() : List.copyOf(dependencies)));
+        Json.object(json.get("features")).forEach((feature, value) -> result.add(
+            new Port(name + "[" + feature + "]", "", description(Json.object(value).get("description")),
+                    dependencies(Json.object(value).get("dependencies")))));
+        return result;
+    }
+
+    /**
+     * @param value a manifest's {@code dependencies}: names or
+     *              {@code {"name": ..., "features": [...], "platform": ..., "host": ...}} objects
+     */
+    private static List<String> dependencies(Object value) {
+        var result = new ArrayList<String>();
+        for (var dependency : Json.array(value)) {
+            if (Boolean.TRUE.equals(Json.object(dependency).get("host"))) {
+                continue;
+            }
+            var spec = qualified(dependency, null);
+            if (spec != null && !result.contains(spec)) {
+                result.add(spec.intern());
+            }
+        }
+        return result.isEmpty() ? List.of() : List.copyOf(result);
+    }
+
+    /**
+     * @param item a name or an object with {@code name}, {@code features} and {@code platform}
+     * @param port for a default feature of that port, {@code null} for a dependency
+     * @return e.g. {@code curl[ssl] (!uwp)}, or {@code null} without a name
+     */
+    private static String qualified(Object item, String port) {
+        var fields = Json.object(item);
+        var name = item instanceof String ? (String) item : Json.string(fields.get("name"));
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        var spec = new StringBuilder(port == null ? name.trim() : port + "[" + name.trim() + "]");
+        var features = new ArrayList<String>();
+        for (var feature : Json.array(fields.get("features"))) {
+            var featureName = feature instanceof String ? (String) feature : Json.string(Json.object(feature).get("name"));
+            if (featureName != null && !featureName.isBlank()) {
+                features.add(featureName.trim());
+            }
+        }
+        if (!features.isEmpty()) {
+            spec.append('[').append(String.join(",", features)).append(']');
+        }
+        var platform = Json.string(fields.get("platform"));
+        if (platform != null && !platform.isBlank()) {
+            spec.append(" (").append(platform.trim()).append(')');
+        }
+        return spec.toString();
+    }
+
+    /** @param value a CONTROL {@code Build-Depends} line, e.g. {@code zlib, openssl (!windows), curl[ssl]} */
+    private static List<String> controlDependencies(String value) {
+        var result = new ArrayList<String>();
+        for (var dependency : value.split(",(?![^(]*\\))")) {
+            var spec = dependency.trim().replaceAll("\\s+", " ").replaceAll("\\s*\\(", " (");
+            if (!spec.isEmpty() && !result.contains(spec)) {
+                result.add(spec.intern());
+            }
+        }
+        return result.isEmpty() ? List.of() : List.copyOf(result);
+    }
+
+    private static String description(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return Json.array(value).stream().map(String::valueOf).collect(Collectors.joining(" "));
+    }
+
+    static List<Port> fromControl(List<String> lines) {
+        var result = new ArrayList<Port>();
+        var paragraph = new HashMap<String, String>();
+        String lastKey = null;
+        for (var line : lines) {
+            if (line.isBlank()) {
+                addControlParagraph(paragraph, result);
+                paragraph.clear();
+                lastKey = null;
+            } else if (Character.isWhitespace(line.charAt(0)) && lastKey != null) {
+                paragraph.merge(lastKey, line.trim(), (a, b) -> a + " " + b);
+            } else {
+                int colon = line.indexOf(':');
+                if (colon < 0) continue;
+                lastKey = line.substring(0, colon).trim();
+                paragraph.put(lastKey, line.substring(colon + 1).trim());
+            }
+        }
+        addControlParagraph(paragraph, result);
+        return result;
+    }
+
+    private static void addControlParagraph(Map<String, String> paragraph, List<Port> result) {
+        var description = paragraph.getOrDefault("Description", "");
+        if (paragraph.containsKey("Source")) {
+            var version = paragraph.getOrDefault("Version", "");
+            var portVersion = paragraph.getOrDefault("Port-Version", "0");
+            if (!portVersion.equals("0")) {
+                version += "#" + portVersion;
+            }
+            var name = paragraph.get("Source");
+            var dependencies = new ArrayList<>(controlDependencies(paragraph.getOrDefault("Build-Depends", "")));
+            for (var feature : paragraph.getOrDefault("Default-Features", "").split(",")) {
+                if (!feature.isBlank()) {
+                    dependencies.add((name + "[" + feature.trim() + "]").intern());
+                }
+            }
+            result.add(new Port(name, version, description, dependencies.isEmpty() ? List.of() : List.copyOf(dependencies)));
+        } else if (paragraph.containsKey("Feature") && !result.isEmpty()) {
+            result.add(new Port(result.get(0).name + "[" + paragraph.get("Feature") + "]", "", description,
+                    controlDependencies(paragraph.getOrDefault("Build-Depends", ""))));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package vcpkg.installer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a process and drains stdout and stderr concurrently, handing lines to the caller while
+ * the process is still running. At most {@link #BUFFER_LINES} lines are buffered; when the
+ * consumer falls behind the drain threads block and the child sees ordinary pipe backpressure.
+ * <p>
+ * Every process is supervised: it is listed by {@link #live()} while it runs, held to the
+ * deadline and idle-output limit of its command ({@link Config#COMMAND_DEADLINES},
+ * {@link Config#COMMAND_IDLE_TIMEOUTS}), and on timeout, cancellation, interruption or
+ * {@link #destroyAll()} killed together with all of its descendants. Anything that survives
+ * being killed is reported by {@link #leaked()}.
+ */
+public class ProcessRunner {
+    public static final int BUFFER_LINES = 1024;
+
+    public interface LineConsumer {
+        void accept(String line, boolean stderr);
+    }
+
+    private static final ExecutorService drains = Tasks.newPerTaskExecutor("vcpkg-output");
+
+    private static final class Line {
+        final String text;
+        final boolean stderr;
+
+        Line(String text, boolean stderr) {
+            this.text = text;
+            this.stderr = stderr;
+        }
+    }
+
+    private static final Line EOF = new Line(null, false);
+
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicLong started = new AtomicLong();
+    private static final AtomicLong timedOut = new AtomicLong();
+
+    private static final Map<String, Long> DEADLINES = seconds(Config.COMMAND_DEADLINES);
+    private static final Map<String, Long> IDLE_TIMEOUTS = seconds(Config.COMMAND_IDLE_TIMEOUTS);
+
+    /** Running processes by pid */
+    private static final Map<Long, Supervised> live = new ConcurrentHashMap<>();
+    /** Processes killed by {@link #destroyTree} and when, kept until they are seen dead */
+    private static final Map<ProcessHandle, Long> killed = new ConcurrentHashMap<>();
+    /** How long a killed process may take to die before it counts as leaked */
+    private static final long KILL_GRACE_MILLIS = 1000;
+
+    static {
+        Metrics.gauge("processes.running", running::get);
+        Metrics.gauge("processes.started", started::get);
+        Metrics.gauge("processes.timedOut", timedOut::get);
+        Metrics.gauge("processes.leaked", () -> leaked().size());
+    }
+
+    /** A process started by {@link #run}, as listed by {@link #live()}. */
+    public static final class Supervised {
+        private final List<String> command;
+        private final ProcessHandle handle;
+        private final long startNanos = System.nanoTime();
+        private volatile long lastOutputNanos = startNanos;
+
+        private Supervised(List<String> command, ProcessHandle handle) {
+            this.command = command;
+            this.handle = handle;
+        }
+
+        public long getPid() {
+            return handle.pid();
+        }
+
+        public String getCommand() {
+            return String.join(" ", command);
+        }
+
+        public long getRunningMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        /** @return milliseconds since the process last printed a line */
+        public long getIdleMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastOutputNanos);
+        }
+
+        @Override
+        public String toString() {
+            return getPid() + " " + getCommand();
+        }
+    }
+
+    /** @return the processes running right now, oldest first */
+    public static List<Supervised> live() {
+        var result = new ArrayList<>(live.values());
+        result.sort(Comparator.comparingLong(p -> p.startNanos));
+        return result;
+    }
+
+    /** @return processes (and their descendants) still alive a while after they were killed */
+    public static List<ProcessHandle> leaked() {
+        killed.keySet().removeIf(handle -> !handle.isAlive());
+        long now = System.currentTimeMillis();
+        var result = new ArrayList<ProcessHandle>();
+        killed.forEach((handle, at) -> {
+            if (now - at > KILL_GRACE_MILLIS) {
+                result.add(handle);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Kills every running process and its descendants, for shutdown.
+     *
+     * @return how many processes were running
+     */
+    public static int destroyAll() {
+        var all = live();
+        all.forEach(p -> destroyTree(p.handle));
+        return all.size();
+    }
+
+    /** Lets another thread abort a running {@link #run}, killing the process and its descendants. */
+    public static class Cancellation {
+        private boolean cancelled = false;
+        private Process process = null;
+
+        public synchronized void cancel() {
+            cancelled = true;
+            if (process != null) {
+                destroyTree(process);
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized void attach(Process process) {
+            this.process = process;
+            if (cancelled) {
+                destroyTree(process);
+            }
+        }
+    }
+
+    public static void destroyTree(Process process) {
+        destroyTree(process.toHandle());
+    }
+
+    /** Kills the descendants first: once the parent is gone they can no longer be found from it. */
+    static void destroyTree(ProcessHandle process) {
+        killed.keySet().removeIf(handle -> !handle.isAlive());
+        long now = System.currentTimeMillis();
+        process.descendants().forEach(child -> {
+            killed.putIfAbsent(child, now);
+            child.destroyForcibly();
+        });
+        killed.putIfAbsent(process, now);
+        process.destroyForcibly();
+    }
+
+    public static int run(List<String> command, LineConsumer onLine, long timeoutMillis)
+            throws IOException, TimeoutException {
+        return run(command, onLine, timeoutMillis, new Cancellation());
+    }
+
+    /**
+     * @param timeoutMillis {@code 0} waits for the process without a limit; a deadline configured
+     *                      for the command takes precedence
+     * @return the exit code of the process
+     * @throws TimeoutException if the process did not finish in time or stopped printing for
+     *                          longer than its idle limit; it is destroyed with its descendants
+     * @throws CancellationException if {@code cancellation} was cancelled before the process finished
+     */
+    public static int run(List<String> command, LineConsumer onLine, long timeoutMillis, Cancellation cancellation)
+            throws IOException, TimeoutException {
+        if (cancellation.isCancelled()) {
+            throw new CancellationException(String.join(" ", command));
+        }
+        var verb = Metrics.verb(command);
+        var timer = Metrics.timer("command." + verb);
+        long start = System.nanoTime();
+        var builder = new ProcessBuilder(command);
+        if (!Config.ASSET_SOURCE.isEmpty()) {
+            builder.environment().put("X_VCPKG_ASSET_SOURCES", assetSources(Config.ASSET_SOURCE));
+        }
+        var process = builder.start();
+        started.incrementAndGet();
+        running.incrementAndGet();
+        var supervised = new Supervised(command, process.toHandle());
+        live.put(supervised.getPid(), supervised);
+        cancellation.attach(process);
+        process.getOutputStream().close();
+
+        var queue = new ArrayBlockingQueue<Line>(BUFFER_LINES);
+        var abandoned = new AtomicBoolean(false);
+        drains.submit(() -> drain(process.getInputStream(), false, queue, abandoned));
+        drains.submit(() -> drain(process.getErrorStream(), true, queue, abandoned));
+
+        long limit = DEADLINES.containsKey(verb) ? TimeUnit.SECONDS.toMillis(DEADLINES.get(verb)) : timeoutMillis;
+        long deadline = limit > 0 ? start + TimeUnit.MILLISECONDS.toNanos(limit) : 0;
+        long idleNanos = TimeUnit.SECONDS.toNanos(IDLE_TIMEOUTS.getOrDefault(verb, 0L));
+        int open = 2;
+        try {
+            while (open > 0) {
+                long wait = waitNanos(deadline, idleNanos, supervised.lastOutputNanos);
+                var line = wait == Long.MAX_VALUE ? queue.take() : queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (line == null) {
+                    if (waitNanos(deadline, idleNanos, supervised.lastOutputNanos) <= 0) {
+                        throw timeout(command, deadline);
+                    }
+                    continue;
+                }
+                supervised.lastOutputNanos = System.nanoTime();
+                if (line == EOF) {
+                    open--;
+                } else {
+                    onLine.accept(line.text, line.stderr);
+                }
+            }
+
+            if (deadline == 0) {
+                process.waitFor();
+            } else if (!process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw timeout(command, deadline);
+            }
+            if (cancellation.isCancelled()) {
+                throw new CancellationException(String.join(" ", command));
+            }
+            return process.exitValue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while running " + String.join(" ", command), e);
+        } finally {
+            abandoned.set(true);
+            if (process.isAlive()) {
+                destroyTree(process);
+            }
+            live.remove(supervised.getPid());
+            queue.clear();
+            running.decrementAndGet();
+            timer.stop(start);
+        }
+    }
+
+    /** @return how long to wait for the next line: until the deadline or the idle limit, whichever is first */
+    private static long waitNanos(long deadline, long idleNanos, long lastOutputNanos) {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        if (deadline != 0) {
+            wait = deadline - now;
+        }
+        if (idleNanos > 0) {
+            wait = Math.min(wait, lastOutputNanos + idleNanos - now);
+        }
+        return wait == Long.MAX_VALUE ? wait : Math.max(0, wait);
+    }
+
+    private static TimeoutException timeout(List<String> command, long deadline) {
+        timedOut.incrementAndGet();
+        return new TimeoutException((deadline != 0 && System.nanoTime() >= deadline ? "deadline: " : "no output: ")
+                + String.join(" ", command));
+    }
+
+    /** @param limits e.g. {@code install=7200,remove=600} */
+    static Map<String, Long> seconds(String limits) {
+        var result = new HashMap<String, Long>();
+        for (var item : limits.split(",")) {
+            var kv = item.split("=", 2);
+            if (kv.length == 2) {
+                try {
+                    result.put(kv[0].trim(), Long.parseLong(kv[1].trim()));
+                } catch (NumberFormatException ignored) { }
+            }
+        }
+        return Map.copyOf(result);
+    }
+
+    /** @return an {@code X_VCPKG_ASSET_SOURCES} value that reads and fills the asset cache in {@code dir} */
+    static String assetSources(String dir) {
+        var uri = Path.of(dir).toAbsolutePath().toUri().toString().replaceFirst("/$", "");
+        return "x-azurl," + uri + ",,readwrite";
+    }
+
+    private static void drain(InputStream input, boolean stderr, BlockingQueue<Line> queue, AtomicBoolean abandoned) {
+        try (var reader = new BufferedReader(new InputStreamReader(input))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!put(queue, new Line(line, stderr), abandoned)) {
+                    return;
+                }
+            }
+        } catch (IOException ignored) { }
+        put(queue, EOF, abandoned);
+    }
+
+    private static boolean put(BlockingQueue<Line> queue, Line line, AtomicBoolean abandoned) {
+        try {
+            while (!queue.offer(line, 100, TimeUnit.MILLISECONDS)) {
+                if (abandoned.get()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
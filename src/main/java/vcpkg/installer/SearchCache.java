@@ -0,0 +1,103 @@
+package vcpkg.installer;
+
+import java.util.*;
+
+/**
+ * Bounded LRU cache of parsed search results ({@code name -> [name, version, description]}).
+ * Entries expire after a TTL and are evicted by count and by the total number of cached rows.
+ * A miss is answered locally when a result for a prefix of the query is cached: every port
+ * matching the longer query also matches the prefix, so filtering that result is enough.
+ */
+public class SearchCache {
+    static final int MIN_REFINE_LENGTH = 3;
+
+    private static class Entry {
+        final Map<String, String[]> result;
+        final long created;
+
+        Entry(Map<String, String[]> result, long created) {
+            this.result = result;
+            this.created = created;
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxRows;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int rows = 0;
+
+    public SearchCache(int maxEntries, int maxRows, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public synchronized Map<String, String[]> get(String query) {
+        var key = normalize(query);
+        var exact = lookup(key);
+        if (exact != null) {
+            return exact;
+        }
+
+        for (int length = key.length() - 1; length >= MIN_REFINE_LENGTH; length--) {
+            var cached = lookup(key.substring(0, length));
+            if (cached != null) {
+                var refined = new LinkedHashMap<String, String[]>();
+                cached.forEach((name, arr) -> {
+                    if (matches(arr, key)) {
+                        refined.put(name, arr);
+                    }
+                });
+                put(key, refined);
+                return refined;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void put(String query, Map<String, String[]> result) {
+        var previous = entries.put(normalize(query), new Entry(result, System.currentTimeMillis()));
+        if (previous != null) {
+            rows -= previous.result.size();
+        }
+        rows += result.size();
+
+        var it = entries.values().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || rows > maxRows)) {
+            rows -= it.next().result.size();
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        rows = 0;
+    }
+
+    private Map<String, String[]> lookup(String key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > ttlMillis) {
+            entries.remove(key);
+            rows -= entry.result.size();
+            return null;
+        }
+        return entry.result;
+    }
+
+    private static boolean matches(String[] arr, String query) {
+        for (var field : new String[] { arr[0], arr[2] }) {
+            if (field != null && field.toLowerCase(Locale.ROOT).contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,90 @@
+package vcpkg.installer;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One vcpkg installation the app manages: an executable (and with it a root) plus the triplet
+ * its packages are installed for. {@code -Dvcpkg.shards=<path>[@<triplet>];...} lists several;
+ * by default there is a single shard for {@link Config#VCPKG_PATH} and vcpkg's default triplet.
+ */
+public class Shard {
+    private static final List<Shard> CONFIGURED = parse(Config.SHARDS);
+
+    private final String vcpkgPath;
+    private final Path root;
+    private final String triplet;
+
+    /** @param triplet {@code null} for vcpkg's default triplet */
+    public Shard(String vcpkgPath, Path root, String triplet) {
+        this.vcpkgPath = vcpkgPath;
+        this.root = root;
+        this.triplet = triplet;
+    }
+
+    public static List<Shard> configured() {
+        return CONFIGURED;
+    }
+
+    static List<Shard> parse(String shards) {
+        var result = new ArrayList<Shard>();
+        for (var entry : shards.split(";")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int at = entry.lastIndexOf('@');
+            var path = at > 0 ? entry.substring(0, at) : entry;
+            var triplet = at > 0 && at < entry.length() - 1 ? entry.substring(at + 1) : null;
+            result.add(new Shard(path, Utils.rootOfExecutable(path), triplet));
+        }
+        if (result.isEmpty()) {
+            result.add(new Shard(Config.VCPKG_PATH, Config.VCPKG_ROOT, null));
+        }
+        return List.copyOf(result);
+    }
+
+    public String getVcpkgPath() {
+        return vcpkgPath;
+    }
+
+    /** @return {@code null} if the root could not be found */
+    public Path getRoot() {
+        return root;
+    }
+
+    /** @return {@code null} for vcpkg's default triplet */
+    public String getTriplet() {
+        return triplet;
+    }
+
+    /** Identifies the shard; the same shape as {@link InstallScheduler} group keys. */
+    public String getId() {
+        return vcpkgPath + "|" + Objects.toString(triplet, "");
+    }
+
+    /** @return e.g. {@code x64-linux @ /opt/vcpkg} */
+    public String getLabel() {
+        return (triplet == null ? "default" : triplet) + " @ " + (root == null ? vcpkgPath : root);
+    }
+
+    /** @return the package spec vcpkg understands for a package of this shard: {@code name} or {@code name:triplet} */
+    public String spec(String name) {
+        return triplet == null ? name : name + ":" + triplet;
+    }
+
+    /** Inverse of {@link #spec}. */
+    public String nameOf(String spec) {
+        return triplet != null && spec.endsWith(":" + triplet) ? spec.substring(0, spec.length() - triplet.length() - 1) : spec;
+    }
+
+    /** @return {@code true} if an installed package of {@code triplet} belongs to this shard */
+    public boolean matches(String triplet) {
+        return this.triplet == null || this.triplet.equals(triplet);
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+}
@@ -0,0 +1,135 @@
+package vcpkg.installer;
+
+import java.util.*;
+
+/**
+ * Immutable, versioned view of the rows {@link Storage} currently shows. Each row keeps the
+ * {@link PackageInfo} it was built from and that package's state at snapshot time, so two
+ * snapshots can be compared row by row.
+ */
+public class Snapshot {
+    public static final Snapshot EMPTY = new Snapshot(0, new String[0], new PackageInfo[0], new byte[0]);
+
+    /** Row-level difference between two snapshots; indices are ascending. */
+    public static class Diff {
+        private final int[] removed;
+        private final int[] inserted;
+        private final int[] updated;
+        private final boolean reordered;
+
+        Diff(int[] removed, int[] inserted, int[] updated, boolean reordered) {
+            this.removed = removed;
+            this.inserted = inserted;
+            this.updated = updated;
+            this.reordered = reordered;
+        }
+
+        /** @return indices in the older snapshot */
+        public int[] getRemoved() {
+            return removed;
+        }
+
+        /** @return indices in the newer snapshot */
+        public int[] getInserted() {
+            return inserted;
+        }
+
+        /** @return indices in the newer snapshot */
+        public int[] getUpdated() {
+            return updated;
+        }
+
+        /** @return {@code true} if rows kept in both snapshots changed their relative order */
+        public boolean isReordered() {
+            return reordered;
+        }
+
+        public boolean isEmpty() {
+            return !reordered && removed.length == 0 && inserted.length == 0 && updated.length == 0;
+        }
+    }
+
+    private final long version;
+    private final String[] names;
+    private final PackageInfo[] rows;
+    private final byte[] states;
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    private Snapshot(long version, String[] names, PackageInfo[] rows, byte[] states) {
+        this.version = version;
+        this.names = names;
+        this.rows = rows;
+        this.states = states;
+        for (int i = 0; i < names.length; i++) {
+            positions.put(names[i], i);
+        }
+    }
+
+    static Snapshot of(long version, List<String> names, Map<String, PackageInfo> storage) {
+        var nameArray = names.toArray(new String[0]);
+        var rows = new PackageInfo[nameArray.length];
+        var states = new byte[nameArray.length];
+        for (int i = 0; i < nameArray.length; i++) {
+            rows[i] = storage.getOrDefault(nameArray[i], PackageInfo.MISSING);
+            states[i] = rows[i].getState();
+        }
+        return new Snapshot(version, nameArray, rows, states);
+    }
+
+    Snapshot withVersion(long version) {
+        return new Snapshot(version, names, rows, states);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int row) {
+        return names[row];
+    }
+
+    public PackageInfo get(int row) {
+        return rows[row];
+    }
+
+    public List<String> getNames() {
+        return List.of(names);
+    }
+
+    public Diff diffFrom(Snapshot older) {
+        var removed = new ArrayList<Integer>();
+        for (int i = 0; i < older.names.length; i++) {
+            if (!positions.containsKey(older.names[i])) {
+                removed.add(i);
+            }
+        }
+
+        var inserted = new ArrayList<Integer>();
+        var updated = new ArrayList<Integer>();
+        int lastOlder = -1;
+        boolean reordered = false;
+        for (int i = 0; i < names.length; i++) {
+            var old = older.positions.get(names[i]);
+            if (old == null) {
+                inserted.add(i);
+                continue;
+            }
+            if (old < lastOlder) {
+                reordered = true;
+            }
+            lastOlder = old;
+            if (older.rows[old] != rows[i] || older.states[old] != states[i]) {
+                updated.add(i);
+            }
+        }
+        return new Diff(toArray(removed), toArray(inserted), toArray(updated), reordered);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
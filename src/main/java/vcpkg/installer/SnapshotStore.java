@@ -0,0 +1,139 @@
+package vcpkg.installer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact binary copy of the last known installed set and port catalog, so a new session can
+ * show the table before the first {@code vcpkg list} or ports scan finishes. The file records
+ * the vcpkg executable and root it was taken from and is ignored when either differs.
+ * Writes go to a temporary file that is then moved over the old one.
+ */
+public class SnapshotStore {
+    private static final int MAGIC = 0x56435053; // "VCPS"
+    private static final int FORMAT = 3;
+
+    private final Path file;
+    private final String vcpkgPath;
+    private final String root;
+
+    public SnapshotStore(Path file, String vcpkgPath, Path root) {
+        this.file = file;
+        this.vcpkgPath = vcpkgPath;
+        this.root = root == null ? "" : root.toString();
+    }
+
+    /** @return the installed rows ({@code name -> [name, version, description]}), or {@code null} */
+    public Map<String, String[]> loadInstalled() {
+        try (var in = open()) {
+            return in == null ? null : readInstalled(in);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Restores the catalog part of the snapshot into {@code catalog}; kept apart from
+     * {@link #loadInstalled()} because rebuilding the search index takes much longer.
+     *
+     * @return {@code false} if the snapshot has no usable catalog
+     */
+    public boolean loadCatalog(PortCatalog catalog) {
+        try (var in = open()) {
+            if (in == null) {
+                return false;
+            }
+            readInstalled(in);
+            if (!in.readBoolean()) {
+                return false;
+            }
+            catalog.readFrom(in);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private DataInputStream open() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        var in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))));
+        try {
+            if (in.readInt() == MAGIC && in.readInt() == FORMAT
+                    && vcpkgPath.equals(readString(in)) && root.equals(readString(in))) {
+                return in;
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        in.close();
+        return null;
+    }
+
+    private static Map<String, String[]> readInstalled(DataInput in) throws IOException {
+        int count = in.readInt();
+        var installed = new HashMap<String, String[]>(count * 2);
+        for (int i = 0; i < count; i++) {
+            var name = readString(in);
+            installed.put(name, new String[] { name, readString(in), readString(in) });
+        }
+        return installed;
+    }
+
+    public synchronized void save(Map<String, String[]> installed, PortCatalog catalog) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeString(out, vcpkgPath);
+            writeString(out, root);
+            out.writeInt(installed.size());
+            for (var arr : installed.values()) {
+                writeString(out, arr[0]);
+                writeString(out, arr[1]);
+                writeString(out, arr[2]);
+            }
+            out.writeBoolean(catalog != null && catalog.isLoaded());
+            if (catalog != null && catalog.isLoaded()) {
+                catalog.writeTo(out);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Writes a nullable string as a length-prefixed UTF-8 byte sequence ({@code -1} for null). */
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,232 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reader for vcpkg's installed database: {@code installed/vcpkg/status} plus the incremental
+ * files in {@code installed/vcpkg/updates}. Files are read in one go and parsed paragraph by
+ * paragraph. Update files already applied are remembered, so a refresh only reads new deltas
+ * unless vcpkg has rewritten (compacted) the status file.
+ */
+public class StatusDatabase {
+    public static class Entry {
+        private final String name;
+        private final String feature;
+        private final String triplet;
+        private final String version;
+        private final String description;
+        private final String abi;
+        private final List<String> depends;
+        private final boolean installed;
+
+        Entry(Map<String, String> fields) {
+            this.name = fields.getOrDefault("Package", "").intern();
+            this.feature = fields.get("Feature");
+            this.triplet = fields.getOrDefault("Architecture", "").intern();
+            var version = fields.getOrDefault("Version", "");
+            var portVersion = fields.getOrDefault("Port-Version", "0");
+            this.version = portVersion.equals("0") ? version : version + "#" + portVersion;
+            this.description = fields.getOrDefault("Description", "");
+            this.abi = fields.get("Abi");
+            var depends = fields.getOrDefault("Depends", "");
+            this.depends = depends.isBlank() ? List.of() : Arrays.stream(depends.split(","))
+                    .map(String::trim)
+                    .filter(d -> !d.isEmpty())
+                    .collect(Collectors.toUnmodifiableList());
+            this.installed = fields.getOrDefault("Status", "").equals("install ok installed");
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** @return {@code null} for the core paragraph of a package */
+        public String getFeature() {
+            return feature;
+        }
+
+        public String getTriplet() {
+            return triplet;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getAbi() {
+            return abi;
+        }
+
+        public List<String> getDepends() {
+            return depends;
+        }
+
+        public boolean isInstalled() {
+            return installed;
+        }
+
+        /** Name as printed by {@code vcpkg list}: {@code name} or {@code name[feature]}. */
+        public String getDisplayName() {
+            return feature == null ? name : name + "[" + feature + "]";
+        }
+
+        String key() {
+            return getDisplayName() + ":" + triplet;
+        }
+    }
+
+    private final Path databaseDir;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String statusStamp = null;
+    private String lastUpdate = null;
+    private volatile long generation = 0;
+
+    public StatusDatabase(Path installedDir) {
+        this.databaseDir = installedDir.resolve("vcpkg");
+    }
+
+    /** @return a number that changes whenever a refresh read anything */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(databaseDir.resolve("status"));
+    }
+
+    /** @return {@code true} if anything was read since the previous refresh */
+    public synchronized boolean refresh() throws IOException {
+        var status = databaseDir.resolve("status");
+        var stamp = Files.getLastModifiedTime(status).toMillis() + ":" + Files.size(status);
+
+        var updates = listUpdates();
+        boolean reload = !stamp.equals(statusStamp)
+                || (lastUpdate != null && !updates.contains(lastUpdate));
+        if (reload) {
+            entries.clear();
+            lastUpdate = null;
+            parse(status);
+            statusStamp = stamp;
+        }
+
+        boolean changed = reload;
+        for (var update : updates) {
+            if (lastUpdate == null || update.compareTo(lastUpdate) > 0) {
+                parse(databaseDir.resolve("updates").resolve(update));
+                lastUpdate = update;
+                changed = true;
+            }
+        }
+        if (changed) {
+            generation++;
+        }
+        return changed;
+    }
+
+    /** @return the core paragraph of {@code name:triplet} in any state, e.g. a removed package's last ABI */
+    public synchronized Entry find(String name, String triplet) {
+        return entries.get(name + ":" + triplet);
+    }
+
+    public synchronized List<Entry> installed() {
+        return entries.values().stream().filter(Entry::isInstalled).collect(Collectors.toList());
+    }
+
+    private List<String> listUpdates() throws IOException {
+        var dir = databaseDir.resolve("updates");
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (var files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .map(p -> p.getFileName().toString())
+                    .filter(StatusDatabase::isUpdate)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return {@code true} for a delta vcpkg has finished writing: those are named by a zero-padded
+     * number, while one being written is called {@code incomplete} until it is renamed
+     */
+    static boolean isUpdate(String fileName) {
+        if (fileName.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < fileName.length(); i++) {
+            if (fileName.charAt(i) < '0' || fileName.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Reads the whole file onto the heap: a live mapping would keep vcpkg from replacing or deleting it on Windows. */
+    private void parse(Path file) throws IOException {
+        parse(ByteBuffer.wrap(Files.readAllBytes(file)), entry -> entries.put(entry.key(), entry));
+    }
+
+    interface EntrySink {
+        void accept(Entry entry);
+    }
+
+    static void parse(ByteBuffer buffer, EntrySink sink) {
+        var fields = new HashMap<String, String>();
+        var scratch = new byte[256];
+        String lastKey = null;
+        int limit = buffer.limit();
+        int pos = 0;
+
+        while (pos <= limit) {
+            int end = pos;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            int lineEnd = end > pos && buffer.get(end - 1) == '\r' ? end - 1 : end;
+
+            if (lineEnd == pos) {
+                if (!fields.isEmpty()) {
+                    sink.accept(new Entry(fields));
+                    fields.clear();
+                }
+                lastKey = null;
+            } else if ((buffer.get(pos) == ' ' || buffer.get(pos) == '\t') && lastKey != null) {
+                if (scratch.length < lineEnd - pos) scratch = new byte[lineEnd - pos];
+                var more = decode(buffer, pos, lineEnd, scratch).trim();
+                fields.merge(lastKey, more, (a, b) -> a + "\n" + b);
+            } else {
+                int colon = pos;
+                while (colon < lineEnd && buffer.get(colon) != ':') {
+                    colon++;
+                }
+                if (colon < lineEnd) {
+                    if (scratch.length < lineEnd - pos) scratch = new byte[lineEnd - pos];
+                    lastKey = decode(buffer, pos, colon, scratch).intern();
+                    fields.put(lastKey, decode(buffer, colon + 1, lineEnd, scratch).trim());
+                }
+            }
+            pos = end + 1;
+        }
+        if (!fields.isEmpty()) {
+            sink.accept(new Entry(fields));
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to, byte[] scratch) {
+        for (int i = from; i < to; i++) {
+            scratch[i - from] = buffer.get(i);
+        }
+        return new String(scratch, 0, to - from, StandardCharsets.UTF_8);
+    }
+}
@@ -7,40 +7,253 @@ import java.io.*;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
-import static vcpkg.installer.Config.VCPKG_PATH;
+import static vcpkg.installer.Config.CATALOG_REFRESH_SECONDS;
+import static vcpkg.installer.Config.DOWNLOAD_PROCESSES;
+import static vcpkg.installer.Config.HISTORY_FILE;
+import static vcpkg.installer.Config.INSTALL_ORDER;
+import static vcpkg.installer.Config.INSTALLED_POLL_SECONDS;
+import static vcpkg.installer.Config.INSTALL_WORKERS;
+import static vcpkg.installer.Config.METRICS_DUMP_FILE;
+import static vcpkg.installer.Config.METRICS_DUMP_SECONDS;
+import static vcpkg.installer.Config.PREFETCH;
+import static vcpkg.installer.Config.READ_PROCESSES;
+import static vcpkg.installer.Config.SHUTDOWN_SECONDS;
+import static vcpkg.installer.Config.SEARCH_CACHE_ENTRIES;
+import static vcpkg.installer.Config.SEARCH_CACHE_ROWS;
+import static vcpkg.installer.Config.SEARCH_CACHE_TTL_SECONDS;
+import static vcpkg.installer.Config.SNAPSHOT_FILE;
 
+/**
+ * The packages of every configured {@link Shard}. Each shard keeps its own rows, installed
+ * database, caches and snapshot file and refreshes independently; {@link #publish()} merges
+ * them, shard by shard, into one {@link Snapshot}. With a single shard row keys are the package
+ * names, otherwise {@code name|shard id}.
+ */
 public class Storage {
-    static private final Pattern fromSearch = Pattern.compile("^(\\S+)\\s+((\\S+)\\s\\s)?\\s+(.*)?$");
-    static private final Pattern fromList = Pattern.compile("^([^:]+):\\S+\\s+((\\S+)\\s\\s)?\\s+(.*)?$");
+    static private final long SEARCH_TIMEOUT_MILLIS = 2000;
+    static private final long STREAM_REFRESH_MILLIS = 100;
+    static private final long SEARCH_DEBOUNCE_MILLIS = 150;
 
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+    static private final CommandLocks locks = new CommandLocks(READ_PROCESSES, INSTALL_WORKERS, DOWNLOAD_PROCESSES);
 
-    private final ConcurrentHashMap<String, PackageInfo> storage = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedDeque<String> names = new ConcurrentLinkedDeque<>();
+    /** Only times things (polls, debounces) and scans the ports trees; waiting for vcpkg happens on {@link #tasks}. */
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        var thread = new Thread(r, "vcpkg-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService tasks = Tasks.newPerTaskExecutor("vcpkg-task");
+    private final InstallScheduler installScheduler = new InstallScheduler();
+    private final BuildHistory history = new BuildHistory(HISTORY_FILE.isEmpty() ? null : Path.of(HISTORY_FILE));
+    private final BinaryCache binaryCache = BinaryCache.fromEnvironment();
+    private volatile InstallScheduler.Order installOrder = INSTALL_ORDER.equals("shortest")
+            ? InstallScheduler.Order.SHORTEST_FIRST : InstallScheduler.Order.LONGEST_FIRST;
+    private final AtomicInteger busyPackages = new AtomicInteger();
+    /**
+     * Row keys of packages whose dependents are on the same plan: they are removed with
+     * {@code --recurse} without asking, see {@link #removeWithDependents}
+     */
+    private final Set<String> removingWithDependents = ConcurrentHashMap.newKeySet();
+    /**
+     * What vcpkg is asked to install for row keys an upgrade reinstalls or a desired state wants with
+     * features: the spec with the features, e.g. {@code curl[http2,ssl]:x64-linux}, taken before the
+     * removal drops them
+     */
+    private final Map<String, String> reinstallSpecs = new ConcurrentHashMap<>();
+    private volatile long estimatedCompletion = 0;
 
-    private boolean searchMode = false;
+    private final List<ShardState> shards;
+    private final Map<String, ShardState> shardsById = new HashMap<>();
+    /** One per root */
+    private final List<PortCatalog> catalogs = new ArrayList<>();
+    private final List<InstalledWatcher> watchers = new ArrayList<>();
+    /** {@code false} for tools: no polling or watching, and snapshots are written only by {@link #sync()} */
+    private final boolean background;
 
-    private final Runnable triggerUI;
+    private volatile boolean searchMode = false;
+
+    private final BiConsumer<Snapshot, Snapshot.Diff> onSnapshot;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
 
     private final AtomicReference<String> nextSearch = new AtomicReference<>(null);
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private final Set<ProcessRunner.Cancellation> runningSearches = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<ScheduledFuture<?>> pendingSearch = new AtomicReference<>(null);
+    private final Object searchLock = new Object();
+
+    private final Map<String, LongSupplier> gauges = Map.of(
+            "queue.scheduler", () -> scheduler.getQueue().size(),
+            "permits.waiting.read", () -> locks.waiting(CommandLocks.Kind.READ),
+            "permits.waiting.mutate", () -> locks.waiting(CommandLocks.Kind.MUTATE),
+            "permits.waiting.download", () -> locks.waiting(CommandLocks.Kind.DOWNLOAD),
+            "rows", () -> snapshot.size());
+
+    public Storage(BiConsumer<Snapshot, Snapshot.Diff> onSnapshot) {
+        this(onSnapshot, Shard.configured(), true);
+    }
+
+    /** @param background {@code false} skips the refresh tasks and file watching (benchmarks, tools) */
+    Storage(BiConsumer<Snapshot, Snapshot.Diff> onSnapshot, boolean background) {
+        this(onSnapshot, Shard.configured(), background);
+    }
+
+    Storage(BiConsumer<Snapshot, Snapshot.Diff> onSnapshot, List<Shard> shards, boolean background) {
+        this.onSnapshot = onSnapshot;
+        this.background = background;
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        var catalogsByRoot = new HashMap<Path, PortCatalog>();
+        var databasesByRoot = new HashMap<Path, StatusDatabase>();
+        var states = new ArrayList<ShardState>();
+        for (var shard : shards) {
+            var root = shard.getRoot();
+            boolean firstOfRoot = root != null && !catalogsByRoot.containsKey(root);
+            var catalog = root == null
+                    ? null : catalogsByRoot.computeIfAbsent(root, r -> new PortCatalog(r.resolve("ports")));
+            var database = root == null
+                    ? null : databasesByRoot.computeIfAbsent(root, r -> new StatusDatabase(r.resolve("installed")));
+            var state = new ShardState(shard, catalog, firstOfRoot, database, snapshotStore(shard, shards.size()));
+            states.add(state);
+            shardsById.put(shard.getId(), state);
+            if (firstOfRoot) {
+                catalogs.add(catalog);
+            }
+        }
+        this.shards = List.copyOf(states);
+        if (!background) {
+            return;
+        }
+        this.shards.forEach(ShardState::loadSnapshot);
+        gauges.forEach(Metrics::gauge);
+        Metrics.startDump(METRICS_DUMP_SECONDS, METRICS_DUMP_FILE == null ? null : Path.of(METRICS_DUMP_FILE));
 
-    public Storage(Runnable triggerUI) {
-        this.triggerUI = triggerUI;
-        scheduler.scheduleAtFixedRate(this::updateInfo, 0, 2, TimeUnit.SECONDS);
+        var byRoot = new LinkedHashMap<Path, List<ShardState>>();
+        for (var state : this.shards) {
+            if (state.shard.getRoot() != null) {
+                byRoot.computeIfAbsent(state.shard.getRoot(), r -> new ArrayList<>()).add(state);
+            } else {
+                scheduler.scheduleWithFixedDelay(state::requestUpdate, 0, INSTALLED_POLL_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+        byRoot.forEach((root, sharing) -> {
+            var watcher = new InstalledWatcher(root.resolve("installed"), scheduler,
+                    () -> sharing.forEach(ShardState::requestUpdate));
+            watchers.add(watcher);
+            sharing.forEach(ShardState::requestUpdate);
+            watcher.start();
+        });
+        var timer = Metrics.timer("refresh.catalog");
+        for (var catalog : catalogs) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                long start = System.nanoTime();
+                catalog.refresh();
+                timer.stop(start);
+                this.shards.forEach(state -> {
+                    state.saveSnapshot(false);
+                    if (state.catalog == catalog) {
+                        background(() -> {
+                            state.updateOutdated();
+                            state.graph();
+                        });
+                    }
+                });
+            }, 0, CATALOG_REFRESH_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /** One snapshot file per shard: the configured file itself when there is only one. */
+    private static SnapshotStore snapshotStore(Shard shard, int shardCount) {
+        if (SNAPSHOT_FILE.isEmpty()) {
+            return null;
+        }
+        var file = Path.of(SNAPSHOT_FILE);
+        if (shardCount > 1) {
+            file = file.resolveSibling(file.getFileName() + "." + Integer.toHexString(shard.getId().hashCode()));
+        }
+        return new SnapshotStore(file, shard.getVcpkgPath(), shard.getRoot());
     }
 
-    public void shutdown() {
+    public List<Shard> getShards() {
+        return shards.stream().map(state -> state.shard).collect(Collectors.toList());
+    }
+
+    /**
+     * Stops polling and searching, then waits up to {@link Config#SHUTDOWN_SECONDS} for running
+     * work. Whatever is still running after that is interrupted, and every vcpkg process that is
+     * left is killed with its descendants.
+     *
+     * @return {@code true} if everything finished in time
+     */
+    public boolean shutdown() {
+        gauges.forEach(Metrics::removeGauge);
+        watchers.forEach(InstalledWatcher::close);
+        runningSearches.forEach(ProcessRunner.Cancellation::cancel);
         scheduler.shutdown();
-        pool.shutdown();
+        tasks.shutdown();
+        installScheduler.shutdown();
+
+        boolean finished;
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_SECONDS);
+            finished = scheduler.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    && tasks.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    && installScheduler.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finished = false;
+        }
+        if (!finished) {
+            scheduler.shutdownNow();
+            tasks.shutdownNow();
+            installScheduler.shutdownNow();
+            ProcessRunner.destroyAll();
+        }
+        if (background) {
+            shards.forEach(state -> state.saveSnapshot(true));
+        }
+        return finished;
+    }
+
+    private void background(Runnable task) {
+        try {
+            tasks.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    /** Runs {@code action} for every shard, in parallel if there are several, and waits for all of them. */
+    private void forEachShard(Consumer<ShardState> action) {
+        if (shards.size() == 1) {
+            action.accept(shards.get(0));
+            return;
+        }
+        var running = new ArrayList<Future<?>>();
+        for (var state : shards) {
+            try {
+                running.add(tasks.submit(() -> action.accept(state)));
+            } catch (RejectedExecutionException e) {
+                action.accept(state);
+            }
+        }
+        try {
+            for (var future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void installAll(
@@ -48,74 +261,388 @@ public class Storage {
             TetraConsumer<String, RemoveStatus, String, Consumer<Boolean>> onFinishRemove,
             BiConsumer<String, Boolean> onFinishRemoveRecursive
     ) {
-        storage.forEach((name, info) -> {
-            if (info.toInstall()) {
-                info.setStatus(PackageInfo.Status.INSTALLING);
-                pool.submit(() -> install(name, ok -> onFinishInstall.accept(name, ok)));
-            } else if (info.toRemove()) {
-                info.setStatus(PackageInfo.Status.REMOVING);
-                pool.submit(() -> remove(name,
-                        (ok, str, con) -> onFinishRemove.call(name, ok, str, con),
-                        ok -> onFinishRemoveRecursive.accept(name, ok)));
+        var plan = new InstallScheduler.Plan();
+        plan.setPrefetch(PREFETCH);
+        var removedWith = new HashMap<String, List<String>>();
+        for (var state : shards) {
+            var root = state.shard.getVcpkgPath();
+            var removals = new TreeSet<String>();
+            var desiredSpecs = state.desiredSpecs;
+            state.desiredSpecs = Map.of();
+            state.storage.forEach((name, info) -> {
+                if (info.toInstall()) {
+                    var desired = desiredSpecs.get(name);
+                    if (desired != null) {
+                        reinstallSpecs.put(state.key(name), state.shard.spec(desired));
+                    }
+                    if (desired == null && binaryCache.contains(state.abi(name, info.getVersion()))) {
+                        info.setStatus(PackageInfo.Status.INSTALLING);
+                        plan.addRestore(root, state.shard.spec(name));
+                    } else {
+                        info.setStatus(PREFETCH ? PackageInfo.Status.DOWNLOADING : PackageInfo.Status.INSTALLING);
+                        plan.addInstall(root, state.shard.spec(name));
+                    }
+                } else if (info.toRemove()) {
+                    info.setStatus(PackageInfo.Status.REMOVING);
+                    removals.add(name);
+                }
+            });
+            planRemovals(state, removals, plan, removedWith);
+        }
+
+        execute(plan, removedWith, onFinishInstall, onFinishRemove, onFinishRemoveRecursive);
+    }
+
+    /**
+     * Adds the removals of one shard to {@code plan}. A package whose installed dependents are all
+     * being removed as well takes them along in one {@code vcpkg remove --recurse}; they get no
+     * process of their own and are listed in {@code removedWith} under its row key instead.
+     */
+    private void planRemovals(
+            ShardState state, SortedSet<String> removals, InstallScheduler.Plan plan, Map<String, List<String>> removedWith) {
+        var graph = removals.isEmpty() ? null : state.graph();
+        var takenAlong = new HashSet<String>();
+        var dependentsOf = new HashMap<String, List<String>>();
+        if (graph != null) {
+            for (var name : removals) {
+                var dependents = graph.dependents(port(name));
+                if (!dependents.isEmpty() && removals.containsAll(dependents)) {
+                    dependentsOf.put(name, dependents);
+                    takenAlong.addAll(dependents);
+                }
+            }
+        }
+        var claimed = new HashSet<String>();
+        for (var name : removals) {
+            if (takenAlong.contains(name)) {
+                continue;
+            }
+            var dependents = dependentsOf.get(name);
+            if (dependents != null) {
+                var along = new ArrayList<String>();
+                dependents.forEach(d -> { if (claimed.add(d)) along.add(d); });
+                removingWithDependents.add(state.key(name));
+                removedWith.put(state.key(name), along);
+            }
+            plan.addRemoval(state.shard.getVcpkgPath(), state.shard.spec(name));
+        }
+    }
+
+    /**
+     * Upgrades every outdated package through the normal install path: each is removed and then
+     * installed from the current ports tree, together with the installed packages that depend on
+     * it (per the {@link DependencyGraph}), which have to be rebuilt against the new version anyway.
+     * Each comes back with the features it had.
+     *
+     * @return how many packages are upgraded
+     */
+    public int upgradeOutdated(
+            BiConsumer<String, Boolean> onFinishInstall,
+            TetraConsumer<String, RemoveStatus, String, Consumer<Boolean>> onFinishRemove,
+            BiConsumer<String, Boolean> onFinishRemoveRecursive
+    ) {
+        var plan = new InstallScheduler.Plan();
+        plan.setPrefetch(PREFETCH);
+        int count = 0;
+        for (var state : shards) {
+            var root = state.shard.getVcpkgPath();
+            var names = new TreeSet<>(state.outdated());
+            var graph = state.graph();
+            if (graph != null) {
+                for (var name : List.copyOf(names)) {
+                    names.addAll(graph.dependents(port(name)));
+                }
+            }
+            for (var name : names) {
+                var info = state.storage.get(name);
+                if (info != null && info.getStatus() != PackageInfo.Status.INSTALLED) {
+                    continue;
+                }
+                if (info != null) {
+                    info.setStatus(PackageInfo.Status.REMOVING);
+                }
+                removingWithDependents.add(state.key(name));
+                reinstallSpecs.put(state.key(name), state.installedSpec(name));
+                plan.addRemoval(root, state.shard.spec(name));
+                plan.addInstall(root, state.shard.spec(name));
+                count++;
+            }
+        }
+        if (count > 0) {
+            execute(plan, Map.of(), onFinishInstall, onFinishRemove, onFinishRemoveRecursive);
+        }
+        return count;
+    }
+
+    /** @param removedWith packages removed by the removal of another, by its row key, each reported after it */
+    private void execute(
+            InstallScheduler.Plan plan,
+            Map<String, List<String>> removedWith,
+            BiConsumer<String, Boolean> onFinishInstall,
+            TetraConsumer<String, RemoveStatus, String, Consumer<Boolean>> onFinishRemove,
+            BiConsumer<String, Boolean> onFinishRemoveRecursive
+    ) {
+        plan.order(installOrder, this::estimate);
+        int planned = plan.getGroups().stream()
+                .mapToInt(g -> g.getRemovals().size() + g.getRestores().size() + g.getInstalls().size())
+                .sum();
+        long now = System.currentTimeMillis();
+        long eta = now + plan.estimateMillis(INSTALL_WORKERS);
+        estimatedCompletion = busyPackages.getAndAdd(planned) > 0 ? Math.max(estimatedCompletion, eta) : eta;
+
+        publish();
+        installScheduler.execute(plan, new InstallScheduler.Backend() {
+            @Override
+            public void remove(String root, String triplet, String spec) {
+                var state = shardFor(root, triplet);
+                var name = state.shard.nameOf(spec);
+                var label = state.label(name);
+                Storage.this.remove(state, name,
+                        (ok, str, con) -> onFinishRemove.call(label, ok, str, con),
+                        ok -> onFinishRemoveRecursive.accept(label, ok));
+                for (var along : removedWith.getOrDefault(state.key(name), List.of())) {
+                    boolean removed = !state.isInstalled(along);
+                    var info = state.storage.get(along);
+                    if (!removed && info != null) {
+                        info.setStatus(PackageInfo.Status.INSTALLED);
+                    }
+                    onFinishRemove.call(state.label(along), removed ? RemoveStatus.OK : RemoveStatus.FAIL, null, null);
+                }
+            }
+
+            @Override
+            public void install(String root, String triplet, List<String> specs, boolean restore) {
+                Storage.this.install(shardFor(root, triplet), specs, restore, onFinishInstall);
+            }
+
+            @Override
+            public void download(String root, String triplet, String spec) {
+                Storage.this.download(shardFor(root, triplet), spec);
+            }
+
+            @Override
+            public void failed(String root, String triplet, List<String> specs, boolean removal, RuntimeException error) {
+                var state = shardFor(root, triplet);
+                var names = new ArrayList<String>();
+                for (var spec : specs) {
+                    var name = state.shard.nameOf(spec);
+                    names.add(name);
+                    if (removal) {
+                        removingWithDependents.remove(state.key(name));
+                        names.addAll(removedWith.getOrDefault(state.key(name), List.of()));
+                    } else {
+                        reinstallSpecs.remove(state.key(name));
+                    }
+                }
+                busyPackages.addAndGet(-specs.size());
+                for (var name : names) {
+                    var info = state.storage.get(name);
+                    if (info != null) {
+                        info.setStatus(removal ? PackageInfo.Status.INSTALLED : PackageInfo.Status.NOT_INSTALLED);
+                    }
+                    if (removal) {
+                        onFinishRemove.call(state.label(name), RemoveStatus.FAIL, null, null);
+                    } else {
+                        onFinishInstall.accept(state.label(name), false);
+                    }
+                }
+                state.requestUpdate();
+                publish();
             }
         });
     }
 
+    /** @param triplet as parsed from a package spec by {@link InstallScheduler#triplet} */
+    private ShardState shardFor(String root, String triplet) {
+        return shardsById.get(root + "|" + Objects.toString(triplet, ""));
+    }
+
+    /** @return how many installed packages differ from their version in the ports tree */
+    public int getOutdatedCount() {
+        return shards.stream().mapToInt(state -> state.outdatedCount).sum();
+    }
+
+    public void setInstallOrder(InstallScheduler.Order order) {
+        installOrder = order;
+    }
+
+    /**
+     * @return when the installs and removals started so far are expected to finish, from the
+     * durations in {@link BuildHistory}, or {@code null} if none is running
+     */
+    public Long getEstimatedCompletion() {
+        return busyPackages.get() > 0 ? estimatedCompletion : null;
+    }
+
+    private long estimate(String root, String spec, BuildHistory.Operation operation) {
+        var triplet = InstallScheduler.triplet(spec);
+        var state = shardFor(root, triplet);
+        var version = state == null ? null : state.get(state.shard.nameOf(spec)).getVersion();
+        return history.estimate(operation, port(spec), version, triplet);
+    }
+
+    /** @return the port of a {@code name[feature]:triplet} package spec */
+    private static String port(String spec) {
+        int end = spec.length();
+        int colon = spec.lastIndexOf(':');
+        if (colon >= 0) end = colon;
+        int bracket = spec.indexOf('[');
+        if (bracket >= 0 && bracket < end) end = bracket;
+        return spec.substring(0, end);
+    }
+
     public void searchAction(String str) {
+        searchGeneration.incrementAndGet();
         nextSearch.set(str);
-        pool.submit(this::searchActionFunc);
+
+        runningSearches.forEach(ProcessRunner.Cancellation::cancel);
+        ScheduledFuture<?> next;
+        try {
+            next = scheduler.schedule(() -> background(this::searchActionFunc), SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        var previous = pendingSearch.getAndSet(next);
+        if (previous != null) {
+            previous.cancel(false);
+        }
     }
 
     public List<String> getNames() {
-        return new ArrayList<>(names);
+        return snapshot.getNames();
     }
 
-    public PackageInfo get(String name) {
-        return storage.getOrDefault(name, new PackageInfo("", "", "", PackageInfo.Status.REMOVING));
+    public Snapshot getSnapshot() {
+        return snapshot;
     }
 
-    public enum RemoveStatus {
-        OK, FAIL, ASK_RECURSIVE
+    private synchronized void publish() {
+        long start = System.nanoTime();
+        var current = snapshot;
+        Snapshot next;
+        if (shards.size() == 1) {
+            var only = shards.get(0);
+            next = Snapshot.of(current.getVersion() + 1, new ArrayList<>(only.names), only.storage);
+        } else {
+            var keys = new ArrayList<String>();
+            var rows = new HashMap<String, PackageInfo>();
+            for (var state : shards) {
+                for (var name : state.names) {
+                    var key = state.key(name);
+                    keys.add(key);
+                    rows.put(key, state.get(name));
+                }
+            }
+            next = Snapshot.of(current.getVersion() + 1, keys, rows);
+        }
+        var diff = next.diffFrom(current);
+        if (!diff.isEmpty()) {
+            snapshot = next;
+            onSnapshot.accept(next, diff);
+        }
+        Metrics.timer("snapshot.publish").stop(start);
     }
 
-    private static List<String> readAll(InputStream input) throws IOException {
-        var reader = new BufferedReader(new InputStreamReader(input));
-        var result = new ArrayList<String>();
-        while (reader.ready()) {
-            result.add(reader.readLine());
+    /** @param key a row key of the current {@link Snapshot} */
+    public PackageInfo get(String key) {
+        if (shards.size() == 1) {
+            return shards.get(0).get(key);
         }
-        return result;
+        int bar = key.indexOf('|');
+        var state = bar < 0 ? null : shardsById.get(key.substring(bar + 1));
+        return state == null ? PackageInfo.MISSING : state.get(key.substring(0, bar));
     }
 
-    synchronized private static List<String> runVCPKGGetOutput(
+    /**
+     * What applying the row's action would do beyond the package itself, answered from the
+     * shard's {@link DependencyGraph} as of the last refresh. Reads no file and builds nothing,
+     * so the table can ask while painting.
+     *
+     * @return for a package to install the ports it pulls in, for one to remove the installed
+     * packages removed with it; empty otherwise or without a status database
+     */
+    public List<String> impact(PackageInfo info) {
+        if (!info.toInstall() && !info.toRemove()) {
+            return List.of();
+        }
+        var state = info.getShard() == null ? null : shardsById.get(info.getShard().getId());
+        var graph = state == null ? null : state.lastGraph();
+        if (graph == null) {
+            return List.of();
+        }
+        var port = port(info.getName());
+        return info.toInstall() ? graph.missingDependencies(port) : graph.dependents(port);
+    }
+
+    /** @return how the install and remove callbacks name the package of row {@code key} */
+    String label(String key) {
+        var info = get(key);
+        return shards.size() == 1 || info.getShard() == null ? key : shardsById.get(info.getShard().getId()).label(info.getName());
+    }
+
+    public enum RemoveStatus {
+        OK, FAIL, ASK_RECURSIVE
+    }
+
+    private static List<String> runVCPKGGetOutput(
         List<String> command,
         boolean ignoreOutput,
         boolean withTimeout,
         boolean outputError
     ) {
+        var output = new ArrayList<String>();
+        long start = System.nanoTime();
+        CommandLocks.Guard guard;
         try {
-            var pb = new ProcessBuilder(command);
-            var process = pb.start();
-
-            while (process.isAlive()) {
-                try {
-                    boolean ok = withTimeout
-                        ? process.waitFor(2, TimeUnit.SECONDS)
-                        : process.waitFor() == 0;
+            guard = locks.acquire(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            Metrics.timer("lock." + Metrics.verb(command)).stop(start);
+            int exitCode = ProcessRunner.run(command, (line, stderr) -> {
+                if (!stderr || outputError) {
+                    output.add(line);
+                }
+            }, withTimeout ? SEARCH_TIMEOUT_MILLIS : 0);
 
-                    if (ok) {
-                        if (process.exitValue() != 0) {
-                            return outputError ? readAll(process.getInputStream()) : null;
-                        }
-                        break;
-                    }
-                    return outputError ? readAll(process.getInputStream()) : null;
-                } catch (InterruptedException ignored) { }
+            if (exitCode != 0) {
+                return outputError ? output : null;
             }
             if (outputError) return List.of();
-            return ignoreOutput ? List.of() : readAll(process.getInputStream());
+            return ignoreOutput ? List.of() : output;
+        } catch (TimeoutException e) {
+            return outputError ? output : null;
         } catch (IOException e) {
             return null;
+        } finally {
+            guard.close();
+        }
+    }
+
+    /** @param timeoutMillis {@code 0} waits without a limit */
+    private static boolean runVCPKGStreaming(
+            List<String> command, Consumer<String> onLine, ProcessRunner.Cancellation cancellation, long timeoutMillis) {
+        long start = System.nanoTime();
+        CommandLocks.Guard guard;
+        try {
+            guard = locks.acquire(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            Metrics.timer("lock." + Metrics.verb(command)).stop(start);
+            return ProcessRunner.run(command, (line, stderr) -> {
+                if (!stderr) {
+                    onLine.accept(line);
+                }
+            }, timeoutMillis, cancellation) == 0;
+        } catch (TimeoutException | IOException | CancellationException e) {
+            return false;
+        } finally {
+            guard.close();
         }
     }
 
@@ -123,57 +650,154 @@ public class Storage {
         return runVCPKGGetOutput(command, ignoreOutput, withTimeout, false);
     }
 
-    private void updateInfo() {
-        var lines = runVCPKG(List.of(VCPKG_PATH, "list"), false, true);
-        if (lines == null) {
-            return;
-        }
+    /** Refreshes the installed sets of all shards, in parallel. */
+    void updateInfo() {
+        forEachShard(ShardState::updateInfo);
+    }
 
-        var installed = lines.stream()
-            .map(fromList::matcher)
-            .filter(Matcher::find)
-            .map(match -> new String[] { match.group(1), match.group(3), match.group(4) })
-            .collect(Collectors.toMap(m -> m[0], Function.identity()));
+    /** Scans the ports trees now instead of waiting for the periodic refresh. */
+    void refreshCatalogs() {
+        catalogs.parallelStream().forEach(PortCatalog::refresh);
+        shards.forEach(ShardState::updateOutdated);
+    }
 
-        if (searchMode) {
-            storage.forEach(
-                (name, info) -> {
-                    if (installed.containsKey(name))  {
-                        info.ensureInstalled();
-                    } else {
-                        info.ensureRemoved();
-                    }
+    /**
+     * Re-reads the port catalogs and the installed sets of all shards and writes their snapshots,
+     * so the next start shows the current state right away.
+     */
+    void sync() {
+        refreshCatalogs();
+        updateInfo();
+        shards.forEach(state -> state.saveSnapshot(true));
+    }
+
+    /**
+     * Shows exactly the packages named by {@code specs}, as a search for them would, and selects
+     * them for install or deselects them for removal by the next {@link #installAll}. A spec
+     * {@code name:triplet} names the package in the shards of that triplet, a bare name in every shard.
+     *
+     * @return the row keys of the packages, in shard order
+     */
+    List<String> select(Collection<String> specs, boolean install) {
+        searchGeneration.incrementAndGet();
+        searchMode = true;
+        var keys = new ArrayList<String>();
+        for (var state : shards) {
+            var found = new LinkedHashMap<String, String[]>();
+            for (var spec : specs) {
+                var triplet = InstallScheduler.triplet(spec);
+                if (triplet == null) {
+                    found.put(spec, new String[] { spec, "", "" });
+                } else if (triplet.equals(state.shard.getTriplet())) {
+                    var name = state.shard.nameOf(spec);
+                    found.put(name, new String[] { name, "", "" });
                 }
-            );
-        } else {
-            storage.entrySet().removeIf(e -> {
-                if (!installed.containsKey(e.getKey())) {
-                    var pane = e.getValue().getUi().getRootPane();
-                    if (pane != null) {
-                        pane.remove(e.getValue().getUi());
+            }
+            state.show(found);
+            for (var name : found.keySet()) {
+                state.get(name).setSelected(install);
+                keys.add(state.key(name));
+            }
+        }
+        publish();
+        return keys;
+    }
+
+    /**
+     * Shows, as a dry run, what brings every shard {@code desired} covers to that state: only the
+     * packages that change are listed, those to install selected and those to remove deselected,
+     * so the next {@link #installAll} applies exactly this plan. Kept are the wanted ports and all
+     * they depend on, per the {@link DependencyGraph}; without a status database nothing is removed.
+     * A wanted feature an installed package lacks is listed as its {@code name[feature]} row, which
+     * installs the package with that feature added to those it has.
+     * Reads the installed database and ports trees only, so a shard that matches runs no vcpkg process.
+     *
+     * @return the row keys of the planned changes, in shard order; empty if nothing is to change
+     */
+    public List<String> planDesired(DesiredState desired) {
+        catalogs.stream().filter(catalog -> !catalog.isLoaded()).forEach(PortCatalog::refresh);
+        updateInfo();
+        searchGeneration.incrementAndGet();
+        searchMode = true;
+        var keys = new ArrayList<String>();
+        for (var state : shards) {
+            var triplet = state.shard.getTriplet() == null ? BinaryCache.defaultTriplet() : state.shard.getTriplet();
+            var wanted = desired.ports(triplet);
+            // the default shard reads every triplet; only the one it installs for is compared
+            var installed = state.installedOf(triplet);
+            var found = new TreeMap<String, String[]>();
+            var toInstall = new HashSet<String>();
+            var specs = new HashMap<String, String>();
+            if (wanted != null && installed != null) {
+                wanted.forEach((name, features) -> {
+                    if (!installed.containsKey(name)) {
+                        var port = state.catalog == null ? null : state.catalog.find(name);
+                        found.put(name, port == null ? new String[] { name, "", "" }
+                                : new String[] { name, port.getVersion(), port.getDescription() });
+                        toInstall.add(name);
+                        if (!features.isEmpty()) {
+                            specs.put(name, name + "[" + String.join(",", features) + "]");
+                        }
+                        return;
                     }
-                    e.getValue().getUi().setVisible(false);
-                    return true;
-                }
-                return false;
-            });
-            installed.forEach(
-                (name, arr) -> {
-                    if (!storage.containsKey(name)) {
-                        var newInfo = new PackageInfo(arr[0], arr[1], arr[2], PackageInfo.Status.INSTALLED);
-                        storage.put(name, newInfo);
+                    // vcpkg rebuilds an installed package, and what depends on it, to add a feature;
+                    // the spec keeps the features it has so none is dropped on the way
+                    var all = new TreeSet<>(features);
+                    installed.keySet().forEach(key -> {
+                        if (key.startsWith(name + "[")) all.add(key.substring(name.length() + 1, key.length() - 1));
+                    });
+                    for (var feature : features) {
+                        var key = name + "[" + feature + "]";
+                        if (!installed.containsKey(key)) {
+                            found.put(key, new String[] { key, installed.get(name)[1], "" });
+                            toInstall.add(key);
+                            specs.put(key, name + "[" + String.join(",", all) + "]");
+                        }
                     }
+                });
+                var graph = state.graph();
+                if (graph != null) {
+                    var keep = new HashSet<>(wanted.keySet());
+                    wanted.keySet().forEach(name -> keep.addAll(graph.requirements(name)));
+                    installed.forEach((name, arr) -> {
+                        // feature paragraphs go with their package
+                        if (name.indexOf('[') < 0 && !keep.contains(name)) {
+                            found.put(name, arr);
+                        }
+                    });
                 }
-            );
-
-            names.clear();
-            names.addAll(storage.keySet());
+            }
+            state.desiredSpecs = Map.copyOf(specs);
+            state.show(found);
+            for (var name : found.keySet()) {
+                var info = state.get(name);
+                if (toInstall.contains(name)) {
+                    info.ensureRemoved();
+                    info.setSelected(true);
+                } else {
+                    info.ensureInstalled();
+                    info.setSelected(false);
+                }
+                keys.add(state.key(name));
+            }
         }
+        publish();
+        return keys;
+    }
 
-        triggerUI.run();
+    /** Applies an installed set to the first shard as if it had just been read (benchmarks). */
+    void reconcile(Map<String, String[]> installed) {
+        shards.get(0).reconcile(installed);
     }
 
+    /** Runs queued searches one at a time; a newer query cancels the running one instead of waiting. */
     private void searchActionFunc() {
+        synchronized (searchLock) {
+            runSearches();
+        }
+    }
+
+    private void runSearches() {
         while (true) {
             var str = nextSearch.get();
             while (!nextSearch.compareAndSet(str, null)) {
@@ -182,70 +806,678 @@ public class Storage {
             if (str == null) {
                 return;
             }
+            final long generation = searchGeneration.get();
+            final var query = str;
+            long start = System.nanoTime();
 
             if (str.isEmpty()) {
                 searchMode = false;
+                updateInfo();
                 return;
             }
             searchMode = true;
 
-            var lines = runVCPKG(List.of(VCPKG_PATH, "search", str), false, true);
-
-            if (lines == null) {
-                return;
+            var found = new ConcurrentHashMap<ShardState, Map<String, String[]>>();
+            forEachShard(state -> {
+                var result = state.search(query, generation);
+                if (result != null) {
+                    found.put(state, result);
+                }
+            });
+            if (found.size() != shards.size() || generation != searchGeneration.get()) {
+                continue;
             }
 
-            final var found = lines.stream()
-                    .map(fromSearch::matcher)
-                    .filter(Matcher::find)
-                    .map(match -> new String[]{match.group(1), match.group(3), match.group(4)})
-                    .collect(Collectors.toMap(m -> m[0], Function.identity(), (a, b) -> a));
-
-            storage.keySet().removeIf(k -> !found.containsKey(k));
-            found.forEach(
-                    (name, arr) -> storage.putIfAbsent(name,
-                            new PackageInfo(arr[0], arr[1], arr[2], PackageInfo.Status.NOT_INSTALLED))
-            );
-            names.clear();
-            names.addAll(storage.keySet());
+            shards.forEach(state -> state.show(found.get(state)));
+            publish();
+            Metrics.timer("search").stop(start);
+        }
+    }
 
-            triggerUI.run();
+    /** Fetches the sources (and tools) of {@code spec} into vcpkg's downloads and asset caches. */
+    private void download(ShardState state, String spec) {
+        var features = reinstallSpecs.getOrDefault(state.key(state.shard.nameOf(spec)), spec);
+        runVCPKGStreaming(List.of(state.shard.getVcpkgPath(), "install", "--only-downloads", features), line -> { },
+                new ProcessRunner.Cancellation(), 0);
+        var info = state.storage.get(state.shard.nameOf(spec));
+        if (info != null) {
+            info.ensureDownloaded();
+            publish();
         }
     }
 
+    /** @param restore {@code true} if the packages are expected to come from the binary cache */
+    private void install(ShardState state, List<String> specs, boolean restore, BiConsumer<String, Boolean> onFinish) {
+        var operation = restore ? BuildHistory.Operation.RESTORE : BuildHistory.Operation.INSTALL;
+        var command = new ArrayList<>(List.of(state.shard.getVcpkgPath(), "install"));
+        for (var spec : specs) {
+            var reinstall = reinstallSpecs.remove(state.key(state.shard.nameOf(spec)));
+            var argument = reinstall != null ? reinstall : spec;
+            if (!command.contains(argument)) {
+                // several missing features of one package name the same spec
+                command.add(argument);
+            }
+        }
+        var versions = new HashMap<String, String>();
+        for (var spec : specs) {
+            var info = state.get(state.shard.nameOf(spec));
+            versions.put(port(spec), info.getLatestVersion() != null ? info.getLatestVersion() : info.getVersion());
+            if (info != PackageInfo.MISSING && info.getStatus() == PackageInfo.Status.NOT_INSTALLED) {
+                // removed by an upgrade a moment ago
+                info.setStatus(PackageInfo.Status.INSTALLING);
+            }
+        }
+        var timed = new HashSet<String>();
+        var built = new HashSet<String>();
+        long start = System.nanoTime();
+        runVCPKGStreaming(command, line -> {
+            if (restore && line.startsWith("Building ")) {
+                // the archive was gone after all; keep the build time out of the restore estimates
+                built.add(port(line.substring("Building ".length()).replaceFirst("\\.\\.\\.$", "")));
+            }
+            var elapsed = BuildHistory.parseElapsed(line);
+            if (elapsed != null) {
+                var port = port(elapsed.getKey());
+                history.record(built.contains(port) ? BuildHistory.Operation.INSTALL : operation, port, versions.get(port),
+                        InstallScheduler.triplet(elapsed.getKey()), elapsed.getValue());
+                timed.add(port);
+            }
+        }, new ProcessRunner.Cancellation(), 0);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
 
-    private void install(String name, Consumer<Boolean> onFinish) {
-        var x = runVCPKG(List.of(VCPKG_PATH, "install", name), true, false);
-        updateInfo();
-        onFinish.accept(x != null);
+        var installed = state.readInstalled();
+        state.updateInfo();
+        for (var spec : specs) {
+            var name = state.shard.nameOf(spec);
+            boolean ok = installed != null && installed.containsKey(name);
+            if (ok && specs.size() == 1 && timed.isEmpty()) {
+                history.record(operation, port(spec), versions.get(port(spec)), InstallScheduler.triplet(spec), millis);
+            }
+            if (!ok) {
+                state.storage.computeIfPresent(name, (k, info) -> {
+                    info.setStatus(PackageInfo.Status.NOT_INSTALLED);
+                    return info;
+                });
+            }
+            onFinish.accept(state.label(name), ok);
+        }
+        busyPackages.addAndGet(-specs.size());
+        publish();
     }
 
+    /**
+     * Removes {@code name}, or, if other installed packages depend on it, asks {@code onFinish}
+     * whether to remove them too. The dependents come from the {@link DependencyGraph}; only
+     * without a status database does a plain {@code vcpkg remove} find them out by failing.
+     */
     private void remove(
+            ShardState state,
             String name,
             TriConsumer<RemoveStatus, String, Consumer<Boolean>> onFinish,
             Consumer<Boolean> onFinishR
     ) {
+        var graph = state.graph();
+        if (removingWithDependents.remove(state.key(name))) {
+            removeWithDependents(state, name, graph, onFinish);
+            return;
+        }
+        var dependents = graph == null ? List.<String>of() : graph.dependents(port(name));
+        if (!dependents.isEmpty()) {
+            busyPackages.decrementAndGet();
+            var message = new StringJoiner("\n    ", "Removing " + name + " also removes\n    ", "");
+            dependents.forEach(message::add);
+            onFinish.call(RemoveStatus.ASK_RECURSIVE, message.toString(), cancel ->
+                    installScheduler.submit(() -> removeRecurseOrCancel(state, name, cancel, onFinishR)));
+            return;
+        }
+
+        long start = System.nanoTime();
+        var spec = state.shard.spec(name);
         var x = runVCPKGGetOutput(
-                List.of(VCPKG_PATH, "remove", name), false, false, true);
-        updateInfo();
+                List.of(state.shard.getVcpkgPath(), "remove", spec), false, false, true);
+        if (x != null && x.isEmpty()) {
+            history.record(BuildHistory.Operation.REMOVE, port(spec), state.get(name).getVersion(),
+                    InstallScheduler.triplet(spec), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        busyPackages.decrementAndGet();
+        state.updateInfo();
         if (x == null || x.isEmpty()) {
             onFinish.call(x == null ? RemoveStatus.FAIL : RemoveStatus.OK, null, null);
         } else {
             var sj = new StringJoiner("\n");
             x.forEach(sj::add);
             onFinish.call(RemoveStatus.ASK_RECURSIVE, sj.toString(), cancel ->
-                    pool.submit(() -> removeRecurseOrCancel(name, cancel, onFinishR)));
+                    installScheduler.submit(() -> removeRecurseOrCancel(state, name, cancel, onFinishR)));
         }
     }
 
 
-    private void removeRecurseOrCancel(String name, Boolean cancel, Consumer<Boolean> onFinish) {
-        var x = runVCPKG(List.of(VCPKG_PATH, "remove", name, "--recurse"), true, false);
+    /**
+     * Removes a package with everything that depends on it, all of which is on the same plan (being
+     * removed, or reinstalled by an upgrade); a package already taken along by an earlier removal
+     * needs no process.
+     */
+    private void removeWithDependents(
+            ShardState state, String name, DependencyGraph graph, TriConsumer<RemoveStatus, String, Consumer<Boolean>> onFinish) {
+        List<String> x = List.of();
+        if (graph == null || graph.isInstalled(port(name))) {
+            var command = new ArrayList<>(List.of(state.shard.getVcpkgPath(), "remove", state.shard.spec(name)));
+            if (graph != null) {
+                command.add("--recurse");
+            }
+            x = runVCPKG(command, true, false);
+        }
+        busyPackages.decrementAndGet();
+        state.updateInfo();
+        onFinish.call(x == null ? RemoveStatus.FAIL : RemoveStatus.OK, null, null);
+    }
+
+    private void removeRecurseOrCancel(ShardState state, String name, Boolean cancel, Consumer<Boolean> onFinish) {
         if (cancel) {
-            storage.get(name).setStatus(PackageInfo.Status.INSTALLED);
+            var info = state.storage.get(name);
+            if (info != null) {
+                info.setStatus(PackageInfo.Status.INSTALLED);
+                info.setSelected(true);
+                publish();
+            }
+            return;
         }
-        updateInfo();
+        var x = runVCPKG(List.of(state.shard.getVcpkgPath(), "remove", state.shard.spec(name), "--recurse"), true, false);
+        state.updateInfo();
         onFinish.accept(x != null);
     }
 
+    private static final class OutdatedCheck {
+        final String installedVersion;
+        final PortCatalog.Port port;
+        /** {@code null} if up to date or unknown */
+        final String latestVersion;
+
+        OutdatedCheck(String installedVersion, PortCatalog.Port port) {
+            this.installedVersion = installedVersion;
+            this.port = port;
+            var portVersion = port == null ? null : port.getVersion();
+            this.latestVersion = portVersion == null || portVersion.isEmpty() || installedVersion == null
+                    || installedVersion.isEmpty() || portVersion.equals(installedVersion) ? null : portVersion;
+        }
+    }
+
+    private static boolean sameRows(Map<String, String[]> a, Map<String, String[]> b) {
+        if (b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (var entry : a.entrySet()) {
+            var other = b.get(entry.getKey());
+            if (other == null || !Objects.equals(entry.getValue()[1], other[1])
+                    || !Objects.equals(entry.getValue()[2], other[2])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rows, installed database, caches and snapshot file of one {@link Shard}. Each shard has its
+     * own refresh queue and lock, so a slow {@code vcpkg list} in one root does not hold up the others.
+     */
+    private final class ShardState {
+        final Shard shard;
+        final ConcurrentHashMap<String, PackageInfo> storage = new ConcurrentHashMap<>();
+        /** Row order; replaced as a whole, never changed in place, so {@link #publish()} never sees it half-filled */
+        volatile List<String> names = List.of();
+
+        final PortCatalog catalog;
+        /** Shards of the same root share its catalog; only the first keeps it in its snapshot */
+        private final boolean ownsCatalog;
+        private final StatusDatabase statusDatabase;
+        private final AtomicBoolean updateQueued = new AtomicBoolean(false);
+
+        private final SearchCache searchCache = new SearchCache(
+                SEARCH_CACHE_ENTRIES, SEARCH_CACHE_ROWS, TimeUnit.SECONDS.toMillis(SEARCH_CACHE_TTL_SECONDS));
+        private long cachedCatalogGeneration = -1;
+        private Set<String> lastInstalled = Set.of();
+
+        /** Installed version against port version, per installed package; written under the shard's lock */
+        private final Map<String, OutdatedCheck> outdatedChecks = new ConcurrentHashMap<>();
+        private Map<String, String[]> checkedInstalled = null;
+        private long checkedCatalogGeneration = -1;
+        volatile int outdatedCount = 0;
+
+        private final Object graphLock = new Object();
+        private volatile DependencyGraph graph = null;
+        private long graphDatabaseGeneration = -1;
+        private long graphCatalogGeneration = -1;
+
+        private final SnapshotStore snapshotStore;
+        private final Object snapshotLock = new Object();
+        private volatile Map<String, String[]> persistedInstalled = null;
+        /** Like {@link #persistedInstalled} but keyed {@code name:triplet}; {@code null} until read from vcpkg */
+        private volatile Map<String, String[]> installedSpecs = null;
+        /**
+         * What the last {@link #planDesired} wants installed with features, by row name, e.g.
+         * {@code curl -> curl[ssl]}; taken over by the next {@link #installAll}
+         */
+        volatile Map<String, String> desiredSpecs = Map.of();
+        private volatile boolean snapshotDirty = false;
+        private long savedCatalogGeneration = -1;
+
+        ShardState(Shard shard, PortCatalog catalog, boolean ownsCatalog, StatusDatabase statusDatabase,
+                   SnapshotStore snapshotStore) {
+            this.shard = shard;
+            this.catalog = catalog;
+            this.ownsCatalog = ownsCatalog;
+            this.statusDatabase = statusDatabase;
+            this.snapshotStore = snapshotStore;
+        }
+
+        String key(String name) {
+            return shards.size() == 1 ? name : name + "|" + shard.getId();
+        }
+
+        /** @return how callbacks name a package: with its root and triplet when there are several shards */
+        String label(String name) {
+            return shards.size() == 1 ? name : name + " (" + shard.getLabel() + ")";
+        }
+
+        PackageInfo get(String name) {
+            return storage.getOrDefault(name, PackageInfo.MISSING);
+        }
+
+        /** @return {@code true} if {@code name} was installed at the last read of the installed set */
+        boolean isInstalled(String name) {
+            var installed = persistedInstalled;
+            return installed != null && installed.containsKey(name);
+        }
+
+        private PackageInfo row(String[] arr, PackageInfo.Status status) {
+            return new PackageInfo(arr[0], arr[1], arr[2], status, shard);
+        }
+
+        /** Runs {@link #updateInfo()} on its own thread unless a run is already queued. */
+        void requestUpdate() {
+            if (updateQueued.compareAndSet(false, true)) {
+                background(() -> {
+                    updateQueued.set(false);
+                    updateInfo();
+                });
+            }
+        }
+
+        /**
+         * Shows the installed set of the previous session right away and queues the restore of its
+         * catalog ahead of the first refresh; {@link #updateInfo()} and {@link PortCatalog#refresh()}
+         * then revalidate both and publish only the changes.
+         */
+        void loadSnapshot() {
+            if (snapshotStore == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            var installed = snapshotStore.loadInstalled();
+            if (installed != null) {
+                reconcile(installed);
+                snapshotDirty = false;
+            }
+            Metrics.timer("snapshot.load").stop(start);
+
+            if (catalog != null && ownsCatalog) {
+                scheduler.execute(() -> {
+                    synchronized (snapshotLock) {
+                        if (snapshotStore.loadCatalog(catalog)) {
+                            savedCatalogGeneration = catalog.getGeneration();
+                        }
+                    }
+                });
+            }
+        }
+
+        /** Writes the snapshot if the installed set or the catalog changed since the last write. */
+        void saveSnapshot(boolean force) {
+            synchronized (snapshotLock) {
+                long catalogGeneration = catalog == null || !ownsCatalog ? -1 : catalog.getGeneration();
+                if (snapshotStore == null || persistedInstalled == null
+                        || !force && !snapshotDirty && catalogGeneration == savedCatalogGeneration) {
+                    return;
+                }
+                long start = System.nanoTime();
+                snapshotDirty = false;
+                try {
+                    snapshotStore.save(persistedInstalled, ownsCatalog ? catalog : null);
+                    savedCatalogGeneration = catalogGeneration;
+                } catch (IOException e) {
+                    snapshotDirty = true;
+                }
+                Metrics.timer("snapshot.save").stop(start);
+            }
+        }
+
+        synchronized void updateInfo() {
+            long start = System.nanoTime();
+            var installed = readInstalled();
+            if (installed != null) {
+                // rebuilt here, off the event thread, so the table only ever reads a finished graph
+                graph();
+                reconcile(installed);
+            }
+            Metrics.timer("refresh.installed").stop(start);
+            if (snapshotDirty) {
+                background(() -> saveSnapshot(false));
+            }
+        }
+
+        synchronized void reconcile(Map<String, String[]> installed) {
+            if (!installed.keySet().equals(lastInstalled)) {
+                lastInstalled = Set.copyOf(installed.keySet());
+                searchCache.clear();
+            }
+            if (!sameRows(installed, persistedInstalled)) {
+                persistedInstalled = installed;
+                snapshotDirty = true;
+            }
+
+            if (searchMode) {
+                storage.forEach(
+                    (name, info) -> {
+                        if (installed.containsKey(name))  {
+                            info.ensureInstalled();
+                        } else {
+                            info.ensureRemoved();
+                        }
+                    }
+                );
+            } else {
+                installed.forEach(
+                    (name, arr) -> {
+                        var existing = storage.get(name);
+                        if (existing == null || existing.getStatus() == PackageInfo.Status.INSTALLED
+                                && !Objects.equals(existing.getVersion(), arr[1])) {
+                            // new, or upgraded since the row was made
+                            storage.put(name, row(arr, PackageInfo.Status.INSTALLED));
+                        }
+                    }
+                );
+                // rows first, then the order, then the stale rows: a concurrent publish() never lists a missing row
+                names = installed.keySet().stream().sorted().collect(Collectors.toUnmodifiableList());
+                storage.keySet().removeIf(name -> !installed.containsKey(name));
+            }
+
+            updateOutdated();
+            publish();
+        }
+
+        /**
+         * @return the rows of the last read of the installed set that are installed for {@code triplet}
+         * ({@code name -> [name, version, description]}), or {@code null} if it has not been read yet
+         */
+        Map<String, String[]> installedOf(String triplet) {
+            var specs = installedSpecs;
+            if (specs == null) {
+                return null;
+            }
+            var result = new HashMap<String, String[]>();
+            var suffix = ":" + triplet;
+            specs.forEach((spec, arr) -> {
+                if (spec.endsWith(suffix)) {
+                    result.put(spec.substring(0, spec.length() - suffix.length()), arr);
+                }
+            });
+            return result;
+        }
+
+        /** @return the installed packages of this shard's triplet ({@code name -> [name, version, description]}) */
+        Map<String, String[]> readInstalled() {
+            if (statusDatabase != null && statusDatabase.exists()) {
+                try {
+                    statusDatabase.refresh();
+                    var installed = new HashMap<String, String[]>();
+                    var specs = new HashMap<String, String[]>();
+                    statusDatabase.installed().forEach(entry -> {
+                        if (shard.matches(entry.getTriplet())) {
+                            var arr = new String[] { entry.getDisplayName(), entry.getVersion(), entry.getDescription() };
+                            installed.putIfAbsent(entry.getDisplayName(), arr);
+                            specs.put(entry.getDisplayName() + ":" + entry.getTriplet(), arr);
+                        }
+                    });
+                    installedSpecs = specs;
+                    return installed;
+                } catch (IOException ignored) { }
+            }
+
+            var lines = runVCPKG(List.of(shard.getVcpkgPath(), "list"), false, true);
+            if (lines == null) {
+                return null;
+            }
+
+            var installed = new HashMap<String, String[]>();
+            var specs = new HashMap<String, String[]>();
+            var scanner = new OutputScanner(OutputScanner.Format.LIST);
+            OutputScanner.Sink sink = (name, feature, triplet, version, description) -> {
+                var key = OutputScanner.displayName(name, feature);
+                if (shard.matches(triplet)) {
+                    var arr = new String[] { key, version, description };
+                    installed.putIfAbsent(key, arr);
+                    specs.put(key + ":" + triplet, arr);
+                }
+            };
+            for (var line : lines) {
+                scanner.scan(line, sink);
+            }
+            installedSpecs = specs;
+            return installed;
+        }
+
+        /**
+         * vcpkg computes a package's ABI hash only while installing it, so this is the ABI recorded in
+         * the installed database the last time the same version was installed for the triplet.
+         *
+         * @return {@code null} if unknown
+         */
+        String abi(String name, String version) {
+            if (statusDatabase == null || !statusDatabase.exists()) {
+                return null;
+            }
+            var triplet = shard.getTriplet() == null ? BinaryCache.defaultTriplet() : shard.getTriplet();
+            var entry = statusDatabase.find(port(name), triplet);
+            if (entry == null || version != null && !version.isEmpty() && !version.equals(entry.getVersion())) {
+                return null;
+            }
+            return entry.getAbi();
+        }
+
+        /**
+         * @return the dependency graph of this shard's triplet as of the last read of the status
+         * database and catalog, rebuilt when either changed; {@code null} without a status database
+         */
+        DependencyGraph graph() {
+            if (statusDatabase == null || !statusDatabase.exists()) {
+                return null;
+            }
+            synchronized (graphLock) {
+                long databaseGeneration = statusDatabase.getGeneration();
+                long catalogGeneration = catalog == null ? -1 : catalog.getGeneration();
+                if (graph == null || databaseGeneration != graphDatabaseGeneration
+                        || catalogGeneration != graphCatalogGeneration) {
+                    long start = System.nanoTime();
+                    if (databaseGeneration == 0) {
+                        try {
+                            statusDatabase.refresh();
+                            databaseGeneration = statusDatabase.getGeneration();
+                        } catch (IOException e) {
+                            return null;
+                        }
+                    }
+                    var triplet = shard.getTriplet() == null ? BinaryCache.defaultTriplet() : shard.getTriplet();
+                    var installed = new ArrayList<StatusDatabase.Entry>();
+                    for (var entry : statusDatabase.installed()) {
+                        if (entry.getTriplet().equals(triplet)) {
+                            installed.add(entry);
+                        }
+                    }
+                    graph = DependencyGraph.build(installed, catalog == null ? List.of() : catalog.entries(), triplet);
+                    graphDatabaseGeneration = databaseGeneration;
+                    graphCatalogGeneration = catalogGeneration;
+                    Metrics.timer("graph.build").stop(start);
+                }
+                return graph;
+            }
+        }
+
+        /**
+         * @return the {@link Shard#spec} that installs {@code name} with the features installed for
+         * it now, e.g. {@code curl[http2,ssl]:x64-linux}
+         */
+        String installedSpec(String name) {
+            var features = new TreeSet<String>();
+            if (statusDatabase != null && statusDatabase.exists()) {
+                var triplet = shard.getTriplet() == null ? BinaryCache.defaultTriplet() : shard.getTriplet();
+                for (var entry : statusDatabase.installed()) {
+                    if (entry.getFeature() != null && !entry.getFeature().equals("core")
+                            && entry.getName().equals(name) && entry.getTriplet().equals(triplet)) {
+                        features.add(entry.getFeature());
+                    }
+                }
+            }
+            return shard.spec(features.isEmpty() ? name : name + "[" + String.join(",", features) + "]");
+        }
+
+        /** @return the graph the last {@link #graph()} built, without checking whether it is current */
+        DependencyGraph lastGraph() {
+            return graph;
+        }
+
+        /** @return the rows matching {@code str}, or {@code null} if the search failed or was superseded */
+        Map<String, String[]> search(String str, long generation) {
+            if (catalog != null && catalog.getGeneration() != cachedCatalogGeneration) {
+                cachedCatalogGeneration = catalog.getGeneration();
+                searchCache.clear();
+            }
+
+            var cached = searchCache.get(str);
+            if (cached == null) {
+                cached = catalog != null && catalog.isLoaded() ? searchCatalog(str) : searchVCPKG(str, generation);
+                if (cached != null) {
+                    searchCache.put(str, cached);
+                }
+            }
+            return cached;
+        }
+
+        void show(Map<String, String[]> found) {
+            found.forEach((name, arr) -> storage.putIfAbsent(name, row(arr, PackageInfo.Status.NOT_INSTALLED)));
+            names = List.copyOf(found.keySet());
+            storage.keySet().removeIf(k -> !found.containsKey(k));
+            markOutdated();
+        }
+
+        /** @return the names of the installed packages that are behind the ports tree */
+        List<String> outdated() {
+            var result = new ArrayList<String>();
+            outdatedChecks.forEach((name, check) -> {
+                if (check.latestVersion != null) {
+                    result.add(name);
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Compares installed versions with the ports tree. Only packages whose installed entry or
+         * port manifest changed since the last run are compared again; nothing runs at all if
+         * neither the installed set nor the catalog changed.
+         */
+        synchronized void updateOutdated() {
+            var installed = persistedInstalled;
+            if (catalog == null || !catalog.isLoaded() || installed == null) {
+                return;
+            }
+            long generation = catalog.getGeneration();
+            if (installed == checkedInstalled && generation == checkedCatalogGeneration) {
+                return;
+            }
+            long start = System.nanoTime();
+            outdatedChecks.keySet().retainAll(installed.keySet());
+            int count = 0;
+            for (var entry : installed.entrySet()) {
+                var name = entry.getKey();
+                var version = entry.getValue()[1];
+                var check = outdatedChecks.get(name);
+                var port = name.indexOf('[') < 0 ? catalog.find(name) : null;
+                if (check == null || check.port != port || !Objects.equals(check.installedVersion, version)) {
+                    check = new OutdatedCheck(version, port);
+                    outdatedChecks.put(name, check);
+                }
+                if (check.latestVersion != null) {
+                    count++;
+                }
+            }
+            checkedInstalled = installed;
+            checkedCatalogGeneration = generation;
+            outdatedCount = count;
+            Metrics.timer("refresh.outdated").stop(start);
+            if (markOutdated()) {
+                publish();
+            }
+        }
+
+        /** @return {@code true} if a row changed */
+        private boolean markOutdated() {
+            boolean changed = false;
+            for (var entry : storage.entrySet()) {
+                var check = outdatedChecks.get(entry.getKey());
+                var latest = check == null ? null : check.latestVersion;
+                var info = entry.getValue();
+                if (!Objects.equals(info.getLatestVersion(), latest)) {
+                    info.setLatestVersion(latest);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        private Map<String, String[]> searchCatalog(String str) {
+            var found = new LinkedHashMap<String, String[]>();
+            catalog.search(str).forEach(port -> found.putIfAbsent(port.getName(),
+                    new String[]{port.getName(), port.getVersion(), port.getDescription()}));
+            return found;
+        }
+
+        private Map<String, String[]> searchVCPKG(String str, long generation) {
+            var found = new LinkedHashMap<String, String[]>();
+            var lastTrigger = new long[] { System.nanoTime() };
+            var cancellation = new ProcessRunner.Cancellation();
+            runningSearches.add(cancellation);
+            if (generation != searchGeneration.get()) {
+                runningSearches.remove(cancellation);
+                return null;
+            }
+
+            var scanner = new OutputScanner(OutputScanner.Format.SEARCH);
+            OutputScanner.Sink sink = (name, feature, triplet, version, description) -> {
+                var key = OutputScanner.displayName(name, feature);
+                if (!found.containsKey(key)) {
+                    var arr = new String[]{key, version, description};
+                    found.put(key, arr);
+                    storage.putIfAbsent(key, row(arr, PackageInfo.Status.NOT_INSTALLED));
+                }
+            };
+
+            boolean ok = runVCPKGStreaming(List.of(shard.getVcpkgPath(), "search", str), line -> {
+                if (generation != searchGeneration.get()) {
+                    cancellation.cancel();
+                    return;
+                }
+                if (!scanner.scan(line, sink)) {
+                    return;
+                }
+
+                if (System.nanoTime() - lastTrigger[0] > TimeUnit.MILLISECONDS.toNanos(STREAM_REFRESH_MILLIS)) {
+                    lastTrigger[0] = System.nanoTime();
+                    names = List.copyOf(found.keySet());
+                    publish();
+                }
+            }, cancellation, SEARCH_TIMEOUT_MILLIS);
+            runningSearches.remove(cancellation);
+            return ok ? found : null;
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package vcpkg.installer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread policy for background work. Every task (a process wait, an output drain, a refresh)
+ * gets its own thread: a virtual thread on JDKs that have them, a daemon platform thread
+ * otherwise or when {@code -Dvcpkg.threads=platform} is set. Executors created here never queue,
+ * so concurrency is limited where it matters, by the permits in {@link CommandLocks}.
+ * <p>
+ * Virtual threads are looked up reflectively, so the code still compiles and runs on older JDKs.
+ */
+public class Tasks {
+    private static final boolean VIRTUAL = virtualFactory("vcpkg") != null;
+
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+
+    public static ThreadFactory threadFactory(String name) {
+        var virtual = VIRTUAL ? virtualFactory(name) : null;
+        if (virtual != null) {
+            return virtual;
+        }
+        var counter = new AtomicInteger();
+        return r -> {
+            var thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** @return an executor that starts a new thread for each task (platform threads are reused for 30s) */
+    public static ExecutorService newPerTaskExecutor(String name) {
+        var factory = threadFactory(name);
+        if (isVirtual()) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, factory);
+            } catch (ReflectiveOperationException ignored) {
+                // fall through to platform threads
+            }
+        }
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), factory);
+    }
+
+    private static ThreadFactory virtualFactory(String name) {
+        if (Config.THREADS.equals("platform")) {
+            return null;
+        }
+        try {
+            var builderClass = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // before JDK 21, or a preview JDK without --enable-preview
+            return null;
+        }
+    }
+}
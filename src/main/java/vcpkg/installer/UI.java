@@ -1,13 +1,19 @@
 package vcpkg.installer;
 
+import com.formdev.flatlaf.intellijthemes.materialthemeuilite.FlatMonokaiProContrastIJTheme;
+
 import javax.swing.*;
-import javax.swing.event.CellEditorListener;
 import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.EventObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class UI {
     private final JPanel mainPanel = new JPanel(new GridBagLayout());
@@ -15,20 +21,41 @@ public class UI {
     private final JTextField search = new JTextField();
     private final JTable foundList = new JTable();
     private final JButton installButton = new JButton();
+    private final JButton upgradeButton = new JButton();
+    private final JButton desiredButton = new JButton();
     private final JScrollPane scrollPane1 = new JScrollPane();
 
+    private final PackageTableModel model = new PackageTableModel(Shard.configured().size() > 1);
     private Storage storage;
-    private List<String> names = List.of();
 
     {
         setupUI();
-        storage = new Storage(() ->
-                SwingUtilities.invokeLater(() -> {
-                    names = storage.getNames();
-                    foundList.revalidate();
-                    foundList.updateUI();
-                }));
-        updateTable(foundList);
+        var queued = Metrics.timer("ui.queued");
+        var applied = Metrics.timer("ui.apply");
+        storage = new Storage((snapshot, diff) -> {
+            long posted = System.nanoTime();
+            SwingUtilities.invokeLater(() -> {
+                long start = System.nanoTime();
+                queued.record(start - posted);
+                model.apply(snapshot, diff);
+                showEstimate();
+                showOutdated();
+                applied.stop(start);
+            });
+        });
+        updateTable(foundList, model, info -> storage.impact(info));
+    }
+
+    /** Opens the main window; the whole of Swing is loaded only from here. */
+    public static void launch() {
+        FlatMonokaiProContrastIJTheme.install();
+        JFrame jf = new JFrame("VCPKG Installer");
+        jf.setSize(800, 600);
+        var ui = new UI();
+        Runtime.getRuntime().addShutdownHook(new Thread(ui::shutdown, "vcpkg-shutdown"));
+        jf.setContentPane(ui.getRootComponent());
+        jf.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        jf.setVisible(true);
     }
 
     @SuppressWarnings("SameParameterValue")
@@ -63,10 +90,15 @@ public class UI {
         searchTab.add(search, contraint(0, 0, 1, 0.01, 1));
 
         searchTab.add(scrollPane1);
-        searchTab.add(scrollPane1, contraint(0, 1, 1, 0.8, 2));
+        searchTab.add(scrollPane1, contraint(0, 1, 1, 0.8, 4));
 
 
         searchTab.add(installButton, contraint(1, 0, 0.1, 0.01));
+        searchTab.add(upgradeButton, contraint(2, 0, 0.1, 0.01));
+        showOutdated();
+        desiredButton.setText("Desired state...");
+        desiredButton.setToolTipText("Show what it takes to match a vcpkg.json-style package list; Update applies it");
+        searchTab.add(desiredButton, contraint(3, 0, 0.1, 0.01));
 
         search.addKeyListener(new KeyAdapter() {
             @Override
@@ -77,6 +109,31 @@ public class UI {
         });
 
         installButton.addActionListener(e -> installSelected());
+        upgradeButton.addActionListener(e -> upgradeOutdated());
+        desiredButton.addActionListener(e -> planDesired());
+    }
+
+    private void showOutdated() {
+        int outdated = storage == null ? 0 : storage.getOutdatedCount();
+        upgradeButton.setText(outdated == 0 ? "Up to date" : "Upgrade " + outdated);
+        upgradeButton.setToolTipText(outdated == 0 ? null
+                : "Rebuild the packages that are behind the ports tree, and what depends on them");
+        upgradeButton.setEnabled(outdated > 0);
+    }
+
+    /** Shows on the install button when running installs and removals should be done. */
+    private void showEstimate() {
+        var eta = storage == null ? null : storage.getEstimatedCompletion();
+        if (eta == null) {
+            installButton.setText("Update");
+            installButton.setToolTipText(null);
+            return;
+        }
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(eta - System.currentTimeMillis());
+        installButton.setText(String.format("Update (done ~%tR)", eta));
+        installButton.setToolTipText(minutes < 0
+                ? "Taking longer than previous builds"
+                : "About " + Math.max(1, minutes) + " min left, estimated from previous builds");
     }
 
     private void info(String text) {
@@ -88,6 +145,9 @@ public class UI {
     }
 
     private void installSelected() {
+        if (foundList.isEditing()) {
+            foundList.getCellEditor().stopCellEditing();
+        }
         storage.installAll(
             (name, ok) -> {
                 if (ok) {
@@ -119,6 +179,67 @@ public class UI {
         );
     }
 
+    /** Upgrades all outdated packages and reports once, when the last one is done. */
+    private void upgradeOutdated() {
+        var failed = Collections.synchronizedList(new ArrayList<String>());
+        var left = new AtomicInteger();
+        Runnable report = () -> SwingUtilities.invokeLater(() -> {
+            if (failed.isEmpty()) {
+                info("outdated packages upgraded successfully");
+            } else {
+                error("An error occurred while upgrading " + String.join(", ", failed));
+            }
+        });
+        int count = storage.upgradeOutdated(
+            (name, ok) -> {
+                if (!ok) {
+                    failed.add(name);
+                }
+                if (left.decrementAndGet() == 0) {
+                    report.run();
+                }
+            },
+            (name, status, str, removeRecursiveOrCancel) -> {
+                if (status == Storage.RemoveStatus.ASK_RECURSIVE) {
+                    askForRecurseRemoving(str, removeRecursiveOrCancel);
+                } else if (status == Storage.RemoveStatus.FAIL) {
+                    failed.add(name);
+                }
+            },
+            (name, ok) -> { }
+        );
+        if (count > 0 && left.addAndGet(count) == 0) {
+            report.run();
+        }
+    }
+
+    /** Lists the changes towards a desired-state file as a dry run; the Update button applies them. */
+    private void planDesired() {
+        var chooser = new JFileChooser();
+        if (chooser.showOpenDialog(getRootComponent()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        var file = chooser.getSelectedFile().toPath();
+        search.setText("");
+        Tasks.threadFactory("vcpkg-desired").newThread(() -> {
+            DesiredState desired;
+            try {
+                desired = DesiredState.load(file);
+            } catch (IOException | IllegalArgumentException e) {
+                SwingUtilities.invokeLater(() -> error("Cannot read " + file + ": " + e.getMessage()));
+                return;
+            }
+            int install = 0, remove = 0;
+            for (var key : storage.planDesired(desired)) {
+                if (storage.get(key).toInstall()) install++;
+                else remove++;
+            }
+            var text = install + remove == 0 ? "Installed packages already match " + file.getFileName()
+                    : install + " to install, " + remove + " to remove; press Update to apply";
+            SwingUtilities.invokeLater(() -> info(text));
+        }).start();
+    }
+
     private void askForRecurseRemoving(String message, Consumer<Boolean> removeRecursiveOrCancel) {
         final JOptionPane optionPane = new JOptionPane(message,
                 JOptionPane.QUESTION_MESSAGE,
@@ -142,65 +263,155 @@ public class UI {
         int value = (Integer) optionPane.getValue();
         if (value == JOptionPane.YES_OPTION) {
             removeRecursiveOrCancel.accept(false);
-        } else if (value == JOptionPane.NO_OPTION) {
+        } else {
             dialog.setVisible(false);
             removeRecursiveOrCancel.accept(true);
         }
     }
 
-    private void updateTable(JTable table) {
-        table.setModel(new AbstractTableModel() {
-            @Override
-            public int getRowCount() {
-                return names.size();
-            }
+    @SuppressWarnings("serial")
+    static class PackageTableModel extends AbstractTableModel {
+        static final String SHARD_COLUMN = "Root / Triplet";
+        /** The ports tree's version of an outdated package, empty for the others */
+        static final String LATEST_COLUMN = "Available";
+
+        private Snapshot snapshot = Snapshot.EMPTY;
+        private final List<PackageInfo> rows = new ArrayList<>();
+        private final String[] columns;
+        private final int actionColumn;
+
+        /** @param showShards adds a column with each package's root and triplet */
+        PackageTableModel(boolean showShards) {
+            columns = showShards
+                    ? new String[] { "Name", SHARD_COLUMN, "Version", LATEST_COLUMN, "Description", "Action" }
+                    : new String[] { "Name", "Version", LATEST_COLUMN, "Description", "Action" };
+            actionColumn = columns.length - 1;
+        }
 
-            @Override
-            public int getColumnCount() {
-                return 4;
+        PackageInfo get(int row) {
+            return rows.get(row);
+        }
+
+        void apply(Snapshot next, Snapshot.Diff diff) {
+            if (next.getVersion() <= snapshot.getVersion()) {
+                return;
             }
+            if (next.getVersion() != snapshot.getVersion() + 1) {
+                diff = next.diffFrom(snapshot);
+            }
+            snapshot = next;
 
-            @Override
-            public Object getValueAt(int rowIndex, int columnIndex) {
-                var x = storage.get(names.get(rowIndex));
-                switch (columnIndex) {
-                    case 0: return x.getName();
-                    case 1: return x.getVersion();
-                    case 2: return x.getDescription();
-                    case 3: return x.getUi().isSelected();
+            if (diff.isReordered()) {
+                rows.clear();
+                for (int i = 0; i < next.size(); i++) {
+                    rows.add(next.get(i));
                 }
-                return null;
+                fireTableDataChanged();
+                return;
             }
 
-            @Override
-            public Class<?> getColumnClass(int columnIndex) {
-                if (columnIndex == 3) return Boolean.class;
-                return Object.class;
+            var removed = diff.getRemoved();
+            for (int end = removed.length - 1; end >= 0; ) {
+                int start = end;
+                while (start > 0 && removed[start - 1] == removed[start] - 1) start--;
+                rows.subList(removed[start], removed[end] + 1).clear();
+                fireTableRowsDeleted(removed[start], removed[end]);
+                end = start - 1;
             }
 
-            @Override
-            public boolean isCellEditable(int rowIndex, int columnIndex) {
-                return columnIndex == 3;
+            var inserted = diff.getInserted();
+            for (int start = 0; start < inserted.length; ) {
+                int end = start;
+                while (end + 1 < inserted.length && inserted[end + 1] == inserted[end] + 1) end++;
+                for (int i = inserted[start]; i <= inserted[end]; i++) {
+                    rows.add(i, next.get(i));
+                }
+                fireTableRowsInserted(inserted[start], inserted[end]);
+                start = end + 1;
             }
 
-            @Override
-            public String getColumnName(int column) {
-                switch (column) {
-                    case 0: return "Name";
-                    case 1: return "Version";
-                    case 2: return "Description";
-                    case 3: return "Action";
+            var updated = diff.getUpdated();
+            for (int start = 0; start < updated.length; ) {
+                int end = start;
+                while (end + 1 < updated.length && updated[end + 1] == updated[end] + 1) end++;
+                for (int i = updated[start]; i <= updated[end]; i++) {
+                    rows.set(i, next.get(i));
                 }
-                return "";
+                fireTableRowsUpdated(updated[start], updated[end]);
+                start = end + 1;
             }
-        });
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            var x = rows.get(rowIndex);
+            switch (columns[columnIndex]) {
+                case "Name": return x.getName();
+                case SHARD_COLUMN: return x.getShard() == null ? "" : x.getShard().getLabel();
+                case "Version": return x.getVersion();
+                case LATEST_COLUMN: return x.getLatestVersion() == null ? "" : x.getLatestVersion();
+                case "Description": return x.getDescription();
+                case "Action": return x.isSelected();
+            }
+            return null;
+        }
+
+        @Override
+        public void setValueAt(Object value, int rowIndex, int columnIndex) {
+            if (columnIndex == actionColumn && rows.get(rowIndex).setSelected((Boolean) value)) {
+                fireTableCellUpdated(rowIndex, columnIndex);
+            }
+        }
+
+        @Override
+        public Class<?> getColumnClass(int columnIndex) {
+            if (columnIndex == actionColumn) return Boolean.class;
+            return Object.class;
+        }
+
+        @Override
+        public boolean isCellEditable(int rowIndex, int columnIndex) {
+            if (columnIndex != actionColumn) return false;
+            var status = rows.get(rowIndex).getStatus();
+            return status == PackageInfo.Status.INSTALLED || status == PackageInfo.Status.NOT_INSTALLED;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return column < columns.length ? columns[column] : "";
+        }
+    }
+
+    /**
+     * Installs {@code model} and the column renderers and editor on {@code table}; needs no {@link Storage},
+     * {@code impact} supplies the action tooltips.
+     */
+    static void updateTable(JTable table, PackageTableModel model, Function<PackageInfo, List<String>> impact) {
+        table.setModel(model);
 
         table.getColumn("Name").setCellRenderer(new DefaultTableCellRenderer() {
+            private Font plain = null;
+            private Font bold = null;
+
             @Override
             public Component getTableCellRendererComponent(
                     JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
                 var c = (JLabel) super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                c.setFont(c.getFont().deriveFont(Font.BOLD));
+                if (plain != table.getFont()) {
+                    plain = table.getFont();
+                    bold = plain.deriveFont(Font.BOLD);
+                }
+                c.setFont(bold);
                 return c;
             }
         });
@@ -210,34 +421,39 @@ public class UI {
             public Component getTableCellRendererComponent(
                     JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
                 var c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                ((JLabel)c).setToolTipText(value.toString());
+                ((JLabel)c).setToolTipText(value == null ? null : value.toString());
                 return c;
             }
         });
 
-        table.getColumn("Action").setCellRenderer(new DefaultTableCellRenderer() {
-            @Override
-            public Component getTableCellRendererComponent(
-                    JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-                var info = storage.get(names.get(row));
-                return info.getUi();
-            }
+        var actionRenderer = new JCheckBox();
+        table.getColumn("Action").setCellRenderer((t, value, isSelected, hasFocus, row, column) -> {
+            var info = model.get(row);
+            styleAction(actionRenderer, info);
+            actionRenderer.setToolTipText(impactText(info, impact.apply(info)));
+            return actionRenderer;
         });
 
-        table.getColumn("Action").setCellEditor(new TableCellEditor() {
+        var actionEditor = new JCheckBox();
+        table.getColumn("Action").setCellEditor(new DefaultCellEditor(actionEditor) {
+            private PackageInfo editing = null;
+
+            {
+                actionEditor.addActionListener(e -> actionEditor.setText(actionText(
+                        editing == null ? null : editing.getStatus(), actionEditor.isSelected())));
+            }
+
             @Override
             public Component getTableCellEditorComponent(
                     JTable table, Object value, boolean isSelected, int row, int column) {
-                return storage.get(names.get(row)).getUi();
+                editing = model.get(row);
+                return styleAction(actionEditor, editing);
             }
 
-            public Object getCellEditorValue() { return true; }
-            public boolean isCellEditable(EventObject anEvent) { return true; }
-            public boolean shouldSelectCell(EventObject anEvent) { return true; }
-            public boolean stopCellEditing() { return true; }
-            public void cancelCellEditing() { }
-            public void addCellEditorListener(CellEditorListener l) { }
-            public void removeCellEditorListener(CellEditorListener l) { }
+            @Override
+            public Object getCellEditorValue() {
+                return actionEditor.isSelected();
+            }
         });
 
         table.getColumn("Action").setMaxWidth(100);
@@ -245,6 +461,39 @@ public class UI {
     }
 
 
+    /** @return e.g. {@code also removes: curl, libxml2}, or {@code null} if nothing else is affected */
+    private static String impactText(PackageInfo info, List<String> impact) {
+        if (impact.isEmpty()) {
+            return null;
+        }
+        return (info.toInstall() ? "also installs: " : "also removes: ") + String.join(", ", impact);
+    }
+
+    private static JCheckBox styleAction(JCheckBox box, PackageInfo info) {
+        if (box.getFont() != null && !box.getFont().isBold()) {
+            box.setFont(box.getFont().deriveFont(Font.BOLD));
+        }
+        var status = info.getStatus();
+        box.setSelected(info.isSelected());
+        box.setText(actionText(status, info.isSelected()));
+        box.setForeground(status == PackageInfo.Status.INSTALLED || status == PackageInfo.Status.REMOVING
+                ? Color.RED : Color.GREEN);
+        box.setEnabled(status == PackageInfo.Status.INSTALLED || status == PackageInfo.Status.NOT_INSTALLED);
+        return box;
+    }
+
+    private static String actionText(PackageInfo.Status status, boolean selected) {
+        if (status == null) return "";
+        switch (status) {
+            case INSTALLED: return selected ? "" : "to remove";
+            case NOT_INSTALLED: return selected ? "to install" : "";
+            case REMOVING: return "removing";
+            case INSTALLING: return "installing";
+            case DOWNLOADING: return "downloading";
+        }
+        return "";
+    }
+
     {
         scrollPane1.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane1.setViewportView(foundList);
@@ -260,4 +509,9 @@ public class UI {
     public JComponent getRootComponent() {
         return mainPanel;
     }
+
+    /** Stops background work and persists the current state; safe to call from a shutdown hook. */
+    public void shutdown() {
+        storage.shutdown();
+    }
 }
@@ -1,5 +1,10 @@
 package vcpkg.installer;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public class Utils {
     public interface TetraConsumer<A, B, C, D> {
         void call(A a, B b, C c, D d);
@@ -8,4 +13,51 @@ public class Utils {
     public interface TriConsumer<A, B, C> {
         void call(A a, B b, C c);
     }
+
+    static Path findVcpkgRoot(String vcpkgPath) {
+        var property = System.getProperty("vcpkg.root");
+        if (property != null) {
+            return property.isEmpty() ? null : Path.of(property);
+        }
+
+        var env = System.getenv("VCPKG_ROOT");
+        if (env != null && isVcpkgRoot(Path.of(env))) {
+            return Path.of(env);
+        }
+        return rootOfExecutable(vcpkgPath);
+    }
+
+    /** @return the root the executable {@code vcpkgPath} (a path, or a name looked up on the PATH) lives in */
+    static Path rootOfExecutable(String vcpkgPath) {
+        Path executable = null;
+        if (vcpkgPath.contains(File.separator)) {
+            executable = Path.of(vcpkgPath);
+        } else {
+            var pathEnv = System.getenv("PATH");
+            for (var dir : pathEnv == null ? new String[0] : pathEnv.split(File.pathSeparator)) {
+                for (var name : new String[] { vcpkgPath, vcpkgPath + ".exe" }) {
+                    var candidate = Path.of(dir, name);
+                    if (Files.isExecutable(candidate)) {
+                        executable = candidate;
+                        break;
+                    }
+                }
+                if (executable != null) break;
+            }
+        }
+        if (executable == null) {
+            return null;
+        }
+
+        try {
+            var root = executable.toRealPath().getParent();
+            return isVcpkgRoot(root) ? root : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVcpkgRoot(Path dir) {
+        return dir != null && (Files.isRegularFile(dir.resolve(".vcpkg-root")) || Files.isDirectory(dir.resolve("ports")));
+    }
 }
@@ -0,0 +1,360 @@
+package vcpkg.installer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Scriptable stand-in for the vcpkg executable. It understands {@code search}, {@code list},
+ * {@code install} (also {@code --only-downloads}) and {@code remove} over a generated catalog and keeps its installed set in
+ * {@code $FAKE_VCPKG_STATE/installed.txt}. Behaviour is driven by environment variables:
+ * <ul>
+ *     <li>{@code FAKE_VCPKG_PORTS} - catalog size (default 10000)</li>
+ *     <li>{@code FAKE_VCPKG_LATENCY_<COMMAND>} - extra milliseconds per command, e.g. {@code _SEARCH}</li>
+ *     <li>{@code FAKE_VCPKG_INSTALL_MILLIS} - build time per installed package</li>
+ *     <li>{@code FAKE_VCPKG_REPEAT} - print every search/list line this many times (huge outputs)</li>
+ *     <li>{@code FAKE_VCPKG_HANG} - command that never finishes (and leaves a child process running)</li>
+ *     <li>{@code FAKE_VCPKG_FAIL_RATE} - probability of a non-zero exit for install/remove</li>
+ *     <li>{@code FAKE_VCPKG_ROOT} - if set, {@code installed/vcpkg/status} is maintained there; an install
+ *     records the version of the port's {@code ports/<name>/vcpkg.json} at that time</li>
+ *     <li>{@code FAKE_VCPKG_BINARY_CACHE} - if set, builds are archived there and later installs restore instantly</li>
+ *     <li>{@code FAKE_VCPKG_DOWNLOAD_MILLIS} - time to download a package's sources that are neither in
+ *     {@code $FAKE_VCPKG_STATE/downloads} nor in the {@code x-azurl,file:...} asset cache of {@code X_VCPKG_ASSET_SOURCES}</li>
+ * </ul>
+ */
+public class FakeVcpkg {
+    static final String TRIPLET = "x64-linux";
+
+    public static void main(String[] args) throws Exception {
+        var out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        int code = run(args, out);
+        out.flush();
+        System.exit(code);
+    }
+
+    static String portName(int i) {
+        return "port" + i;
+    }
+
+    static String version(int i) {
+        return (i % 9) + "." + (i % 31) + "." + (i % 7);
+    }
+
+    static String description(int i) {
+        return "Fake port number " + i + " for " + (i % 2 == 0 ? "compression" : "networking") + " and testing";
+    }
+
+    /** Port {@code i} depends on port {@code i / 2} when {@code i} is divisible by three. */
+    static int dependency(int i) {
+        return i % 3 == 0 && i > 0 ? i / 2 : -1;
+    }
+
+    private static int run(String[] args, PrintStream out) throws Exception {
+        if (args.length == 0) {
+            out.println("usage: vcpkg <command>");
+            return 1;
+        }
+        var command = args[0];
+        var ports = Integer.parseInt(env("FAKE_VCPKG_PORTS", "10000"));
+        var repeat = Integer.parseInt(env("FAKE_VCPKG_REPEAT", "1"));
+
+        Thread.sleep(Long.parseLong(env("FAKE_VCPKG_LATENCY_" + command.toUpperCase(Locale.ROOT), "0")));
+        if (command.equals(env("FAKE_VCPKG_HANG", ""))) {
+            new ProcessBuilder("sleep", "3600").start();
+            Thread.sleep(Long.MAX_VALUE);
+        }
+
+        switch (command) {
+            case "search": {
+                var query = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : "";
+                for (int i = 0; i < ports; i++) {
+                    var name = portName(i);
+                    if (name.contains(query) || description(i).toLowerCase(Locale.ROOT).contains(query)) {
+                        for (int r = 0; r < repeat; r++) {
+                            out.println(String.format("%-24s %-16s %s", name, version(i), description(i)));
+                        }
+                    }
+                }
+                out.println();
+                out.println("The search result may be outdated. Run `git pull` to get the latest results.");
+                return 0;
+            }
+            case "list": {
+                for (var name : withState(state -> new TreeSet<>(state))) {
+                    int i = index(name);
+                    for (int r = 0; r < repeat; r++) {
+                        out.println(String.format("%-49s %-19s %s", name + ":" + TRIPLET, version(i), description(i)));
+                    }
+                }
+                return 0;
+            }
+            case "install": {
+                var names = specs(args);
+                boolean onlyDownloads = Arrays.asList(args).contains("--only-downloads");
+                long perPackage = Long.parseLong(env("FAKE_VCPKG_INSTALL_MILLIS", "0"));
+                for (var name : names) {
+                    if (index(name) < 0 || index(name) >= ports) {
+                        out.println("error: while loading " + name + ": the port does not exist");
+                        return 1;
+                    }
+                    if (onlyDownloads) {
+                        download(name, out);
+                        continue;
+                    }
+                    var archive = archive(name);
+                    long millis = 0;
+                    if (archive != null && Files.exists(archive)) {
+                        out.println("Restored 1 package(s) from " + archive.getParent().getParent() + " in 0 ms.");
+                    } else {
+                        millis = download(name, out);
+                        out.println("Building " + name + ":" + TRIPLET + "...");
+                        Thread.sleep(perPackage);
+                        millis += perPackage;
+                        if (failed()) {
+                            out.println("error: building " + name + ":" + TRIPLET + " failed with: BUILD_FAILED");
+                            return 1;
+                        }
+                        if (archive != null) {
+                            Files.createDirectories(archive.getParent());
+                            Files.write(archive, new byte[0]);
+                        }
+                    }
+                    withState(state -> state.add(name));
+                    out.println("Elapsed time to handle " + name + ":" + TRIPLET + ": " + millis + " ms");
+                }
+                return 0;
+            }
+            case "remove": {
+                var names = specs(args);
+                boolean recurse = Arrays.asList(args).contains("--recurse");
+                // like vcpkg, everything installed that depends on the packages, directly or not
+                var dependents = withState(state -> {
+                    var result = new TreeSet<String>();
+                    boolean grew = true;
+                    while (grew) {
+                        grew = false;
+                        for (var installed : state) {
+                            int dep = dependency(index(installed));
+                            if (dep >= 0 && (names.contains(portName(dep)) || result.contains(portName(dep)))
+                                    && !names.contains(installed)) {
+                                grew |= result.add(installed);
+                            }
+                        }
+                    }
+                    return result;
+                });
+                if (!dependents.isEmpty() && !recurse) {
+                    out.println("error: The following packages depend on " + String.join(", ", names) + ":");
+                    dependents.forEach(d -> out.println("  " + d + ":" + TRIPLET));
+                    out.println("Use --recurse to remove them as well.");
+                    return 1;
+                }
+                if (failed()) {
+                    return 1;
+                }
+                withState(state -> {
+                    state.removeAll(names);
+                    state.removeAll(dependents);
+                    return null;
+                });
+                return 0;
+            }
+            default:
+                out.println("error: unknown command " + command);
+                return 1;
+        }
+    }
+
+    private static List<String> specs(String[] args) {
+        var result = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                // the fake has no features: curl[ssl] installs curl
+                var spec = args[i].replaceFirst("\\[[^]]*]", "");
+                int colon = spec.indexOf(':');
+                result.add(colon < 0 ? spec : spec.substring(0, colon));
+            }
+        }
+        return result;
+    }
+
+    private static int index(String name) {
+        try {
+            return name.startsWith("port") ? Integer.parseInt(name.substring(4)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Makes the sources of {@code name} local: from the downloads directory, the asset cache or,
+     * after {@code FAKE_VCPKG_DOWNLOAD_MILLIS}, "the internet", which also fills the asset cache.
+     *
+     * @return the milliseconds spent downloading
+     */
+    private static long download(String name, PrintStream out) throws IOException, InterruptedException {
+        var file = name + "-" + version(index(name)) + ".tar.gz";
+        var local = Path.of(env("FAKE_VCPKG_STATE", System.getProperty("java.io.tmpdir")), "downloads", file);
+        if (Files.exists(local)) {
+            return 0;
+        }
+        Files.createDirectories(local.getParent());
+        var assets = assetCache();
+        var cached = assets == null ? null : assets.resolve(file);
+        long millis = 0;
+        if (cached != null && Files.exists(cached)) {
+            out.println("Downloading " + file + " from the asset cache");
+        } else {
+            out.println("Downloading https://example.invalid/" + file);
+            millis = Long.parseLong(env("FAKE_VCPKG_DOWNLOAD_MILLIS", "0"));
+            Thread.sleep(millis);
+        }
+        var temp = Files.createTempFile(local.getParent(), file, ".part");
+        Files.writeString(temp, name);
+        if (cached != null && !Files.exists(cached)) {
+            Files.createDirectories(assets);
+            Files.copy(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(temp, local, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return millis;
+    }
+
+    /** @return the directory of an {@code x-azurl,file:...} entry in {@code X_VCPKG_ASSET_SOURCES}, or {@code null} */
+    private static Path assetCache() {
+        for (var source : env("X_VCPKG_ASSET_SOURCES", "").split(";")) {
+            var parts = source.trim().split(",");
+            if (parts.length > 1 && parts[0].equals("x-azurl") && parts[1].startsWith("file:")) {
+                return Path.of(URI.create(parts[1]));
+            }
+        }
+        return null;
+    }
+
+    /** A stable fake ABI hash: 64 hex digits derived from name, version and triplet. */
+    static String abi(String name) {
+        var seed = name + "@" + version(index(name)) + ":" + TRIPLET;
+        var sb = new StringBuilder();
+        for (int i = 0; sb.length() < 64; i++) {
+            sb.append(String.format("%08x", (seed + i).hashCode()));
+        }
+        return sb.toString();
+    }
+
+    /** @return where the binary cache keeps {@code name}'s archive, or {@code null} without a cache */
+    private static Path archive(String name) {
+        var cache = System.getenv("FAKE_VCPKG_BINARY_CACHE");
+        if (cache == null || cache.isEmpty()) {
+            return null;
+        }
+        var abi = abi(name);
+        return Path.of(cache, abi.substring(0, 2), abi + ".zip");
+    }
+
+    private static boolean failed() {
+        return new Random().nextDouble() < Double.parseDouble(env("FAKE_VCPKG_FAIL_RATE", "0"));
+    }
+
+    private static String env(String name, String fallback) {
+        var value = System.getenv(name);
+        return value == null || value.isEmpty() ? fallback : value;
+    }
+
+    private interface StateAction<T> {
+        T apply(Set<String> state) throws IOException;
+    }
+
+    /** Runs {@code action} on the installed set under an exclusive file lock and saves any changes. */
+    private static <T> T withState(StateAction<T> action) throws IOException {
+        var dir = Path.of(env("FAKE_VCPKG_STATE", System.getProperty("java.io.tmpdir")));
+        Files.createDirectories(dir);
+        try (var channel = FileChannel.open(dir.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                var file = dir.resolve("installed.txt");
+                var state = new TreeSet<String>();
+                if (Files.exists(file)) {
+                    for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                        if (!line.isBlank()) state.add(line.trim());
+                    }
+                }
+                var before = new TreeSet<>(state);
+                var result = action.apply(state);
+                if (!state.equals(before)) {
+                    Files.write(file, state, StandardCharsets.UTF_8);
+                    writeStatus(state);
+                }
+                return result;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static void writeStatus(Set<String> state) throws IOException {
+        var root = System.getenv("FAKE_VCPKG_ROOT");
+        if (root == null || root.isEmpty()) {
+            return;
+        }
+        var database = Path.of(root, "installed", "vcpkg");
+        Files.createDirectories(database);
+        // packages keep the version they were installed with until they are removed
+        var versions = new HashMap<String, String>();
+        var status = database.resolve("status");
+        if (Files.exists(status)) {
+            StatusDatabase.parse(ByteBuffer.wrap(Files.readAllBytes(status)), entry -> {
+                if (entry.isInstalled() && entry.getFeature() == null) versions.put(entry.getName(), entry.getVersion());
+            });
+        }
+        // like vcpkg, keep the paragraphs of removed packages (and their ABI) while archives exist
+        var known = new TreeSet<>(state);
+        if (!env("FAKE_VCPKG_BINARY_CACHE", "").isEmpty()) {
+            var ports = Integer.parseInt(env("FAKE_VCPKG_PORTS", "10000"));
+            for (int i = 0; i < ports; i++) {
+                if (Files.exists(archive(portName(i)))) known.add(portName(i));
+            }
+        }
+        var sb = new StringBuilder();
+        for (var name : known) {
+            int i = index(name);
+            sb.append("Package: ").append(name).append('\n')
+                .append("Version: ").append(state.contains(name)
+                        ? versions.computeIfAbsent(name, n -> manifestVersion(root, n, i)) : version(i)).append('\n');
+            if (dependency(i) >= 0) {
+                sb.append("Depends: ").append(portName(dependency(i))).append('\n');
+            }
+            sb.append("Architecture: ").append(TRIPLET).append('\n')
+                .append("Multi-Arch: same\n")
+                .append("Abi: ").append(abi(name)).append('\n')
+                .append("Description: ").append(description(i)).append('\n')
+                .append("Status: ").append(state.contains(name) ? "install ok installed" : "purge ok not-installed")
+                .append("\n\n");
+        }
+        var tmp = database.resolve("status-new");
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, status, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return the version in the port's manifest, {@link #version} if there is none */
+    private static String manifestVersion(String root, String name, int i) {
+        try {
+            var manifest = Files.readString(Path.of(root, "ports", name, "vcpkg.json"));
+            var matcher = Pattern.compile("\"version\"\\s*:\\s*\"([^\"]*)\"").matcher(manifest);
+            return matcher.find() ? matcher.group(1) : version(i);
+        } catch (IOException e) {
+            return version(i);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package vcpkg.installer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Drives {@link Storage} headlessly against {@link FakeVcpkg} and reports search latency
+ * percentiles, refresh cost, install throughput and leaked threads/processes.
+ * <p>
+ * Options ({@code --name=value}): {@code duration} (seconds of soak, default 60), {@code ports}
+ * (catalog size, default 10000), {@code batch} (packages per install batch, default 20),
+ * {@code root} (also generate a ports tree and status database, default false) and the fake's
+ * knobs {@code search-latency}, {@code list-latency}, {@code install-millis}, {@code download-millis},
+ * {@code repeat}, {@code hang}, {@code fail-rate}. {@code snapshot} and {@code history} are the
+ * persistent snapshot and build history files (none by default), {@code order} the install order.
+ * With {@code root} the fake also keeps a binary cache, so reinstalling a removed package is a restore.
+ * {@code prefetch} (default true) downloads sources ahead of builds; {@code asset-source} uses a
+ * local directory as the asset cache the downloads read and fill. {@code shards} runs that many
+ * separate fake installations at once. {@code deadlines} and {@code idle-timeouts} set the
+ * per-command process limits ({@code install=2,...} in seconds).
+ * <p>
+ * Before the soak, a desired-state plan is checked against a status database that holds packages
+ * of several triplets: only the default triplet's packages may be planned.
+ */
+public class SoakHarness {
+    private static final long WAIT_MILLIS = 30_000;
+
+    private final Map<String, String> options;
+    private final int ports;
+    private final Object snapshotLock = new Object();
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>(Snapshot.EMPTY);
+    private Storage storage;
+
+    private SoakHarness(Map<String, String> options) {
+        this.options = options;
+        this.ports = Integer.parseInt(options.getOrDefault("ports", "10000"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new HashMap<String, String>();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        System.exit(new SoakHarness(options).run());
+    }
+
+    private int run() throws Exception {
+        var work = Files.createTempDirectory("vcpkg-soak");
+        var root = work.resolve("root");
+        var env = new LinkedHashMap<String, String>();
+        env.put("FAKE_VCPKG_PORTS", String.valueOf(ports));
+        env.put("FAKE_VCPKG_STATE", work.resolve("state").toString());
+        env.put("FAKE_VCPKG_LATENCY_SEARCH", options.getOrDefault("search-latency", "0"));
+        env.put("FAKE_VCPKG_LATENCY_LIST", options.getOrDefault("list-latency", "0"));
+        env.put("FAKE_VCPKG_INSTALL_MILLIS", options.getOrDefault("install-millis", "0"));
+        env.put("FAKE_VCPKG_DOWNLOAD_MILLIS", options.getOrDefault("download-millis", "0"));
+        env.put("FAKE_VCPKG_REPEAT", options.getOrDefault("repeat", "1"));
+        env.put("FAKE_VCPKG_HANG", options.getOrDefault("hang", ""));
+        env.put("FAKE_VCPKG_FAIL_RATE", options.getOrDefault("fail-rate", "0"));
+
+        if (Boolean.parseBoolean(options.getOrDefault("root", "false"))) {
+            createRoot(root);
+            env.put("FAKE_VCPKG_ROOT", root.toString());
+            env.put("FAKE_VCPKG_BINARY_CACHE", work.resolve("archives").toString());
+            System.setProperty("vcpkg.root", root.toString());
+            System.setProperty("vcpkg.binaryCache", work.resolve("archives").toString());
+        } else {
+            System.setProperty("vcpkg.root", "");
+            System.setProperty("vcpkg.binaryCache", "");
+        }
+        System.setProperty("vcpkg.path", writeScript(work, env).toString());
+        System.setProperty("vcpkg.shards", shards(work, env));
+        System.setProperty("vcpkg.snapshot", options.getOrDefault("snapshot", ""));
+        System.setProperty("vcpkg.history", options.getOrDefault("history", ""));
+        System.setProperty("vcpkg.installOrder", options.getOrDefault("order", "longest"));
+        System.setProperty("vcpkg.prefetch", options.getOrDefault("prefetch", "true"));
+        if (options.containsKey("idle-timeouts")) {
+            System.setProperty("vcpkg.idleTimeouts", options.get("idle-timeouts"));
+        }
+        if (options.containsKey("deadlines")) {
+            System.setProperty("vcpkg.deadlines", options.get("deadlines"));
+        }
+        System.setProperty("vcpkg.assetSource",
+                Boolean.parseBoolean(options.getOrDefault("asset-source", "false")) ? work.resolve("assets").toString() : "");
+
+        int baseThreads = Thread.activeCount();
+        System.out.printf("fake vcpkg with %d ports in %s%n", ports, work);
+
+        storage = new Storage((snapshot, diff) -> {
+            latest.set(snapshot);
+            synchronized (snapshotLock) {
+                snapshotLock.notifyAll();
+            }
+        });
+
+        var random = new Random(1);
+        var searchLatency = new ArrayList<Long>();
+        var refreshLatency = new ArrayList<Long>();
+        var installed = new AtomicInteger();
+        var failed = new AtomicInteger();
+        long installMillis = 0;
+        int timeouts = 0;
+        int maxThreads = 0;
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(
+                Long.parseLong(options.getOrDefault("duration", "60")));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "20"));
+        while (System.currentTimeMillis() < end) {
+            var query = "port" + random.nextInt(Math.max(1, ports / 10));
+            var latency = search(query);
+            if (latency < 0) {
+                timeouts++;
+            } else {
+                searchLatency.add(latency);
+            }
+
+            long t0 = System.nanoTime();
+            storage.updateInfo();
+            refreshLatency.add(System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            if (!installBatch(query, batch, installed, failed)) {
+                timeouts++;
+            }
+            installMillis += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+            maxThreads = Math.max(maxThreads, Thread.activeCount());
+        }
+
+        storage.shutdown();
+        Thread.sleep(2000);
+
+        var leakedProcesses = ProcessHandle.current().descendants()
+                .filter(ProcessHandle::isAlive)
+                .collect(Collectors.toList());
+        var leakedThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && !t.isDaemon() && t != Thread.currentThread() && !t.getName().startsWith("DestroyJavaVM"))
+                .map(Thread::getName)
+                .collect(Collectors.toList());
+
+        System.out.printf("search latency ms: %s (%d searches, %d timeouts)%n",
+                percentiles(searchLatency), searchLatency.size(), timeouts);
+        System.out.printf("refresh cost ms:   %s (%d refreshes)%n", percentiles(refreshLatency), refreshLatency.size());
+        System.out.printf("install throughput: %.1f packages/s (%d installed, %d failed)%n",
+                installMillis == 0 ? 0.0 : installed.get() * 1000.0 / installMillis, installed.get(), failed.get());
+        System.out.printf("threads: %d at start, %d peak, %d after shutdown%n",
+                baseThreads, maxThreads, Thread.activeCount());
+        System.out.printf("leaked non-daemon threads: %s%n", leakedThreads);
+        System.out.printf("supervisor: %d still running, %d killed but alive%n",
+                ProcessRunner.live().size(), ProcessRunner.leaked().size());
+        System.out.printf("leaked processes: %s%n", leakedProcesses.stream()
+                .map(p -> p.pid() + " " + p.info().commandLine().orElse("?"))
+                .collect(Collectors.toList()));
+
+        leakedProcesses.forEach(ProcessHandle::destroyForcibly);
+        return leakedThreads.isEmpty() && leakedProcesses.isEmpty() ? 0 : 1;
+    }
+
+    /** @return milliseconds until the table showed the complete result, or {@code -1} on timeout */
+    private long search(String query) throws InterruptedException {
+        var expected = IntStream.range(0, ports)
+                .filter(i -> FakeVcpkg.portName(i).contains(query)
+                        || FakeVcpkg.description(i).toLowerCase(Locale.ROOT).contains(query))
+                .count() * storage.getShards().size();
+
+        long t0 = System.nanoTime();
+        storage.searchAction(query);
+        var done = waitFor(s -> s.size() == expected && s.getNames().stream().allMatch(n -> n.contains(query)));
+        return done ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) : -1;
+    }
+
+    /** Installs up to {@code batch} rows of the current search, then removes them again. */
+    private boolean installBatch(String query, int batch, AtomicInteger installed, AtomicInteger failed)
+            throws InterruptedException {
+        var rows = latest.get();
+        var picked = new ArrayList<String>();
+        for (int i = 0; i < rows.size() && picked.size() < batch; i++) {
+            var info = rows.get(i);
+            if (info.getName().contains(query) && info.notInstalled() && info.setSelected(true)) {
+                picked.add(rows.getName(i));
+            }
+        }
+        if (picked.isEmpty()) {
+            return true;
+        }
+
+        var installs = new CountDownLatch(picked.size());
+        storage.installAll(
+                (name, ok) -> {
+                    (ok ? installed : failed).incrementAndGet();
+                    installs.countDown();
+                },
+                (name, status, message, recurse) -> {
+                    if (status == Storage.RemoveStatus.ASK_RECURSIVE) recurse.accept(false);
+                },
+                (name, ok) -> { });
+        if (!installs.await(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+
+        for (var name : picked) {
+            storage.get(name).setSelected(false);
+        }
+        storage.installAll((name, ok) -> { }, (name, status, message, recurse) -> {
+            if (status == Storage.RemoveStatus.ASK_RECURSIVE) recurse.accept(false);
+        }, (name, ok) -> { });
+        return waitFor(s -> picked.stream().allMatch(name -> storage.get(name).getStatus() != PackageInfo.Status.REMOVING));
+    }
+
+    private interface Condition {
+        boolean test(Snapshot snapshot);
+    }
+
+    private boolean waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        synchronized (snapshotLock) {
+            while (!condition.test(latest.get())) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                snapshotLock.wait(Math.min(left, 100));
+            }
+        }
+        return true;
+    }
+
+    private static String percentiles(List<Long> samples) {
+        if (samples.isEmpty()) {
+            return "-";
+        }
+        var sorted = samples.stream().sorted().collect(Collectors.toList());
+        var unit = sorted.get(sorted.size() - 1) > 1_000_000 ? 1_000_000.0 : 1.0;
+        return Arrays.stream(new double[] { 0.5, 0.9, 0.99, 1.0 })
+                .mapToObj(q -> String.format("p%s=%.1f",
+                        q == 1.0 ? "max" : String.valueOf((int) (q * 100)),
+                        sorted.get((int) Math.min(sorted.size() - 1, Math.floor(q * sorted.size()))) / unit))
+                .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * With {@code --shards=N} (N > 1), sets up N independent fake installations, each with its own
+     * state and, with {@code --root}, its own root holding the script, all sharing one binary cache.
+     *
+     * @return the {@code vcpkg.shards} value, empty for a single shard
+     */
+    private String shards(Path work, Map<String, String> env) throws IOException {
+        int count = Integer.parseInt(options.getOrDefault("shards", "1"));
+        var shards = new StringJoiner(";");
+        for (int i = 0; i < count && count > 1; i++) {
+            var dir = Files.createDirectories(work.resolve("shard" + i));
+            var shardEnv = new LinkedHashMap<>(env);
+            shardEnv.put("FAKE_VCPKG_STATE", dir.resolve("state").toString());
+            if (env.containsKey("FAKE_VCPKG_ROOT")) {
+                dir = dir.resolve("root");
+                createRoot(dir);
+                shardEnv.put("FAKE_VCPKG_ROOT", dir.toString());
+            }
+            shards.add(writeScript(dir, shardEnv) + "@" + FakeVcpkg.TRIPLET);
+        }
+        return shards.toString();
+    }
+
+    private Path writeScript(Path work, Map<String, String> env) throws IOException {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java");
+        var script = new StringBuilder("#!/bin/sh\n");
+        env.forEach((k, v) -> script.append("export ").append(k).append("='").append(v).append("'\n"));
+        script.append("exec '").append(java).append("' -Xshare:auto -XX:TieredStopAtLevel=1 -cp '")
+                .append(System.getProperty("java.class.path")).append("' vcpkg.installer.FakeVcpkg \"$@\"\n");
+
+        var path = work.resolve("vcpkg");
+        Files.writeString(path, script, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return path;
+    }
+
+    private void createRoot(Path root) throws IOException {
+        Files.createDirectories(root.resolve("installed").resolve("vcpkg"));
+        Files.writeString(root.resolve(".vcpkg-root"), "");
+        Files.writeString(root.resolve("installed").resolve("vcpkg").resolve("status"), "");
+        for (int i = 0; i < ports; i++) {
+            var dir = Files.createDirectories(root.resolve("ports").resolve(FakeVcpkg.portName(i)));
+            int dependency = FakeVcpkg.dependency(i);
+            Files.writeString(dir.resolve("vcpkg.json"), String.format(
+                    "{\"name\": \"%s\", \"version\": \"%s\", \"description\": \"%s\", \"dependencies\": [%s]}",
+                    FakeVcpkg.portName(i), FakeVcpkg.version(i), FakeVcpkg.description(i),
+                    dependency < 0 ? "" : "\"" + FakeVcpkg.portName(dependency) + "\""));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static vcpkg.installer.BuildHistory.Operation.*;
+
+class BuildHistoryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesElapsedLines() {
+        assertEquals(Map.entry("zlib:x64-linux", 1_200L), BuildHistory.parseElapsed("Elapsed time to handle zlib:x64-linux: 1.2 s"));
+        assertEquals(Map.entry("curl[ssl]:x64-windows", 250L),
+                BuildHistory.parseElapsed("Elapsed time to handle curl[ssl]:x64-windows: 250 ms"));
+        assertEquals(Map.entry("boost", 150_000L), BuildHistory.parseElapsed("Elapsed time to handle boost: 2.5 min"));
+        assertEquals(Map.entry("fmt:x64-linux", 0L), BuildHistory.parseElapsed("Elapsed time to handle fmt:x64-linux: 300 us"));
+        assertNull(BuildHistory.parseElapsed("Building zlib:x64-linux..."));
+        assertNull(BuildHistory.parseElapsed("Elapsed time to handle zlib:x64-linux: soon"));
+        assertNull(BuildHistory.parseElapsed("Elapsed time to handle zlib:x64-linux: 3 fortnights"));
+    }
+
+    @Test
+    void treatsAMissingTripletAsTheDefault() {
+        var history = new BuildHistory(null);
+        var triplet = BinaryCache.defaultTriplet();
+        history.record(INSTALL, "zlib", "1.3", triplet, 1_000);
+        history.record(INSTALL, "zlib", "1.3", null, 3_000);
+        history.record(INSTALL, "zlib", "1.3", "arm64-android", 40_000);
+
+        assertEquals(2_000, history.estimate(INSTALL, "zlib", "1.3", null));
+        assertEquals(2_000, history.estimate(INSTALL, "zlib", "1.3", triplet));
+        assertEquals(40_000, history.estimate(INSTALL, "zlib", "1.3", "arm64-android"));
+    }
+
+    @Test
+    void fallsBackToThePortThenTheMedianThenTheDefault() {
+        var history = new BuildHistory(null);
+        assertEquals(BuildHistory.DEFAULT_RESTORE_MILLIS, history.estimate(RESTORE, "zlib", "1.3", null));
+
+        history.record(INSTALL, "zlib", "1.3", "x64-linux", 10_000);
+        history.record(INSTALL, "fmt", "10.1", "x64-linux", 20_000);
+        history.record(INSTALL, "boost", "1.83", "x64-linux", 90_000);
+
+        assertEquals(10_000, history.estimate(INSTALL, "zlib", "1.4", "x64-linux"));
+        assertEquals(20_000, history.estimate(INSTALL, "curl", "8.4", "x64-linux"));
+        assertEquals(BuildHistory.DEFAULT_REMOVE_MILLIS, history.estimate(REMOVE, "zlib", "1.3", "x64-linux"));
+    }
+
+    @Test
+    void keepsTheHistoryInItsFile() throws IOException {
+        var file = dir.resolve("history.tsv");
+        var history = new BuildHistory(file);
+        history.record(RESTORE, "zlib", "1.3", null, 4_000);
+        history.record(REMOVE, "zlib", "1.3", "x64-linux", 500);
+
+        var reloaded = new BuildHistory(file);
+        assertEquals(4_000, reloaded.estimate(RESTORE, "zlib", "1.3", BinaryCache.defaultTriplet()));
+        assertEquals(500, reloaded.estimate(REMOVE, "zlib", "1.3", "x64-linux"));
+        assertFalse(Files.exists(dir.resolve("history.tsv.tmp")));
+    }
+}
@@ -0,0 +1,106 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DependencyGraphTest {
+    @TempDir
+    Path ports;
+
+    private PortCatalog catalog;
+
+    private void manifest(String name, String json) throws IOException {
+        Files.createDirectories(ports.resolve(name));
+        Files.writeString(ports.resolve(name).resolve("vcpkg.json"), json, StandardCharsets.UTF_8);
+    }
+
+    @BeforeEach
+    void writePorts() throws IOException {
+        manifest("zlib", "{ \"name\": \"zlib\", \"version\": \"1.3\" }");
+        manifest("openssl", "{ \"name\": \"openssl\", \"version\": \"3.1\","
+                + " \"dependencies\": [ { \"name\": \"vcpkg-cmake\", \"host\": true } ] }");
+        manifest("nghttp2", "{ \"name\": \"nghttp2\", \"version\": \"1.57\" }");
+        manifest("winhttp", "{ \"name\": \"winhttp\", \"version\": \"1.0\" }");
+        manifest("curl", "{ \"name\": \"curl\", \"version\": \"8.4.0\","
+                + " \"dependencies\": [ \"zlib\", { \"name\": \"winhttp\", \"platform\": \"windows & !uwp\" } ],"
+                + " \"default-features\": [ \"ssl\", { \"name\": \"http2\", \"platform\": \"linux | osx\" } ],"
+                + " \"features\": {"
+                + "   \"ssl\": { \"description\": \"TLS\", \"dependencies\": [ { \"name\": \"openssl\", \"platform\": \"!windows\" } ] },"
+                + "   \"http2\": { \"description\": \"HTTP/2\", \"dependencies\": [ \"nghttp2\" ] } } }");
+        manifest("app", "{ \"name\": \"app\", \"version\": \"1.0\","
+                + " \"dependencies\": [ { \"name\": \"curl\", \"default-features\": false, \"features\": [ \"http2\" ] },"
+                + " { \"name\": \"fmt\", \"platform\": \"native\" } ] }");
+        Files.createDirectories(ports.resolve("legacy"));
+        Files.writeString(ports.resolve("legacy").resolve("CONTROL"), "Source: legacy\nVersion: 0.9\n"
+                + "Build-Depends: zlib, openssl (!windows), curl[http2] (linux)\nDefault-Features: extra\n\n"
+                + "Feature: extra\nDescription: extras\nBuild-Depends: nghttp2\n", StandardCharsets.UTF_8);
+        catalog = new PortCatalog(ports);
+        catalog.refresh();
+    }
+
+    private DependencyGraph graph(String triplet, String status) {
+        var installed = new ArrayList<StatusDatabase.Entry>();
+        StatusDatabase.parse(ByteBuffer.wrap(status.getBytes(StandardCharsets.UTF_8)), installed::add);
+        return DependencyGraph.build(installed, catalog.entries(), triplet);
+    }
+
+    @Test
+    void keepsFeaturesAndPlatformsInTheCatalog() {
+        assertEquals(List.of("zlib", "winhttp (windows & !uwp)", "curl[ssl]", "curl[http2] (linux | osx)"),
+                catalog.find("curl").getDependencies());
+        assertEquals(List.of("openssl (!windows)"), catalog.find("curl[ssl]").getDependencies());
+        assertEquals(List.of("curl[http2]", "fmt (native)"), catalog.find("app").getDependencies());
+        assertEquals(List.of(), catalog.find("openssl").getDependencies());
+        assertEquals(List.of("zlib", "openssl (!windows)", "curl[http2] (linux)", "legacy[extra]"),
+                catalog.find("legacy").getDependencies());
+    }
+
+    @Test
+    void evaluatesPlatformsAndDefaultFeaturesForTheTriplet() {
+        var linux = graph("x64-linux", "");
+        assertEquals(List.of("nghttp2", "openssl", "zlib"), linux.missingDependencies("curl"));
+        assertEquals(List.of("curl", "nghttp2", "openssl", "zlib"), linux.missingDependencies("legacy"));
+
+        var windows = graph("x64-windows", "");
+        assertEquals(List.of("winhttp", "zlib"), windows.missingDependencies("curl"));
+        assertEquals(List.of("nghttp2", "zlib"), windows.missingDependencies("legacy"));
+
+        var uwp = graph("x64-uwp", "");
+        assertEquals(List.of("zlib"), uwp.missingDependencies("curl"));
+    }
+
+    @Test
+    void keepsEdgesTheTripletNameCannotDecide() {
+        assertTrue(graph("x64-linux", "").missingDependencies("app").contains("fmt"));
+
+        var custom = graph("x64-custom-toolchain", "");
+        assertEquals(List.of("nghttp2", "openssl", "winhttp", "zlib"), custom.missingDependencies("curl"));
+        assertEquals(graph(null, "").missingDependencies("curl"), custom.missingDependencies("curl"));
+    }
+
+    @Test
+    void usesRecordedDependsForInstalledPackages() {
+        var graph = graph("x64-linux", "Package: zlib\nVersion: 1.3\nArchitecture: x64-linux\nStatus: install ok installed\n\n"
+                + "Package: curl\nVersion: 8.4.0\nDepends: zlib, vcpkg-cmake:x64-windows\nArchitecture: x64-linux\n"
+                + "Status: install ok installed\n\n");
+
+        assertTrue(graph.isInstalled("curl"));
+        assertEquals(List.of("zlib"), graph.requirements("curl"));
+        assertEquals(List.of("curl"), graph.dependents("zlib"));
+        // the installed curl lacks http2, which app asks for
+        assertEquals(List.of("fmt", "nghttp2"), graph.missingDependencies("app"));
+        assertEquals(List.of(), graph.missingDependencies("zlib"));
+        assertEquals(List.of(), graph.dependents("no-such-port"));
+    }
+}
@@ -0,0 +1,114 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DesiredStateTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void appliesItemsToTheirTriplets() {
+        var desired = DesiredState.parse("{ \"dependencies\": [ \"zlib\", \"fmt:x64-linux\" ],"
+                + " \"triplets\": { \"x64-windows\": [ \"openssl\" ], \"arm64-android\": [] } }");
+
+        assertEquals(Map.of("fmt", Set.of(), "zlib", Set.of()), desired.ports("x64-linux"));
+        assertEquals(Map.of("openssl", Set.of(), "zlib", Set.of()), desired.ports("x64-windows"));
+        assertEquals(Map.of("zlib", Set.of()), desired.ports("arm64-android"));
+        assertEquals(Map.of(), DesiredState.parse("{ \"triplets\": { \"x64-linux\": [] } }").ports("x64-linux"));
+        assertNull(DesiredState.parse("{ \"dependencies\": [ \"fmt:x64-linux\" ] }").ports("x64-windows"));
+    }
+
+    @Test
+    void keepsFeatures() {
+        var desired = DesiredState.parse("{ \"dependencies\": ["
+                + " { \"name\": \"curl\", \"features\": [ \"ssl\", { \"name\": \"http2\" } ] },"
+                + " \"curl[core,zstd]\", \"sqlite3[fts5]:x64-linux\", { \"name\": \"fmt\" } ],"
+                + " \"triplets\": { \"x64-linux\": [ \"boost[mpi]:x64-linux\" ] } }");
+
+        assertEquals(Map.of(
+                "curl", Set.of("http2", "ssl", "zstd"),
+                "sqlite3", Set.of("fts5"),
+                "fmt", Set.of(),
+                "boost", Set.of("mpi")), desired.ports("x64-linux"));
+        assertEquals(Set.of("curl", "fmt"), desired.ports("x64-windows").keySet());
+    }
+
+    @Test
+    void rejectsInvalidJson() {
+        assertThrows(IllegalArgumentException.class, () -> DesiredState.parse("{ \"dependencies\": [ "));
+    }
+
+    @Test
+    void comparesTheDefaultShardWithItsOwnTripletOnly() throws IOException {
+        var triplet = BinaryCache.defaultTriplet();
+        var other = triplet.equals("arm64-android") ? "x64-linux" : "arm64-android";
+        writeStatus("fmt", triplet, "zlib", triplet, "boost", other, "fmt", other);
+
+        assertEquals(List.of("zlib remove"), plan(null, "{ \"dependencies\": [ \"fmt\" ] }"));
+    }
+
+    @Test
+    void addsMissingFeaturesToInstalledPackages() throws IOException {
+        writeStatus("curl", "x64-linux", "curl[http2]", "x64-linux", "zlib", "x64-linux");
+
+        assertEquals(List.of("curl[ssl] install"),
+                plan("x64-linux", "{ \"dependencies\": [ { \"name\": \"curl\", \"features\": [ \"http2\", \"ssl\" ] }, \"zlib\" ] }"));
+        assertEquals(List.of(),
+                plan("x64-linux", "{ \"dependencies\": [ \"curl[http2]\", \"zlib\" ] }"));
+    }
+
+    @Test
+    void installsMissingPackagesWithTheirFeatures() throws IOException {
+        writeStatus("zlib", "x64-linux");
+
+        assertEquals(List.of("curl install"),
+                plan("x64-linux", "{ \"dependencies\": [ \"curl[ssl]\", \"zlib\" ] }"));
+    }
+
+    /** @param specs name, triplet, name, triplet, ... where a name may be {@code port[feature]} */
+    private void writeStatus(String... specs) throws IOException {
+        var status = new StringBuilder();
+        for (int i = 0; i < specs.length; i += 2) {
+            var name = specs[i];
+            int bracket = name.indexOf('[');
+            status.append("Package: ").append(bracket < 0 ? name : name.substring(0, bracket)).append('\n');
+            if (bracket < 0) {
+                status.append("Version: 1.0\n");
+            } else {
+                status.append("Feature: ").append(name, bracket + 1, name.length() - 1).append('\n');
+            }
+            status.append("Architecture: ").append(specs[i + 1]).append("\nStatus: install ok installed\n\n");
+        }
+        var database = root.resolve("installed").resolve("vcpkg");
+        Files.createDirectories(database);
+        Files.writeString(database.resolve("status"), status, StandardCharsets.UTF_8);
+    }
+
+    /** @return {@code key install} or {@code key remove} per planned row; the plan must not need vcpkg */
+    private List<String> plan(String triplet, String json) {
+        var storage = new Storage((snapshot, diff) -> { },
+                List.of(new Shard(root.resolve("no-vcpkg").toString(), root, triplet)), false);
+        try {
+            var planned = new ArrayList<String>();
+            for (var key : storage.planDesired(DesiredState.parse(json))) {
+                var info = storage.get(key);
+                planned.add(key + (info.toRemove() ? " remove" : info.toInstall() ? " install" : " ?"));
+            }
+            return planned;
+        } finally {
+            storage.shutdown();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTest {
+    @Test
+    void parsesNestedValues() {
+        var value = Json.object(Json.parse(" { \"name\": \"zlib\", \"version\": 1.3, \"features\": [ true, false, null ],"
+                + " \"supports\": { \"platform\": \"!uwp\" }, \"empty\": [] } "));
+
+        assertEquals(List.of("name", "version", "features", "supports", "empty"), List.copyOf(value.keySet()));
+        assertEquals("zlib", Json.string(value.get("name")));
+        assertEquals(1.3, value.get("version"));
+        assertEquals(Arrays.asList(true, false, null), Json.array(value.get("features")));
+        assertEquals("!uwp", Json.string(Json.object(value.get("supports")).get("platform")));
+        assertEquals(List.of(), Json.array(value.get("empty")));
+    }
+
+    @Test
+    void decodesEscapes() {
+        assertEquals("a\"b\\c/d\n\t\u00e9", Json.parse("\"a\\\"b\\\\c\\/d\\n\\t\\u00e9\""));
+    }
+
+    @Test
+    void toleratesWrongTypesInAccessors() {
+        assertEquals(Map.of(), Json.object("zlib"));
+        assertEquals(List.of(), Json.array(Map.of()));
+        assertNull(Json.string(1.0));
+        assertNull(Json.string(null));
+    }
+
+    @Test
+    void rejectsMalformedText() {
+        assertThrows(IllegalArgumentException.class, () -> Json.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("{ \"a\": 1 "));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("[ 1, 2 ] x"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("\"open"));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("\"\\u12\""));
+        assertThrows(IllegalArgumentException.class, () -> Json.parse("tru"));
+    }
+
+    @Test
+    void writesWhatItReads() {
+        var values = new LinkedHashMap<String, Object>();
+        values.put("name", "say \"hi\"\n\u0001");
+        values.put("count", 3);
+        values.put("ok", true);
+        values.put("none", null);
+        var text = Json.write(values);
+
+        assertEquals("{\"name\":\"say \\\"hi\\\"\\n\\u0001\",\"count\":3,\"ok\":true,\"none\":null}", text);
+        var read = Json.object(Json.parse(text));
+        assertEquals("say \"hi\"\n\u0001", read.get("name"));
+        assertEquals(3.0, read.get("count"));
+        assertTrue(read.containsKey("none"));
+    }
+}
@@ -0,0 +1,66 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputScannerTest {
+    /** @return name, feature, triplet, version and description of the line, or {@code null} if it was rejected */
+    private static List<String> scan(OutputScanner.Format format, String line) {
+        var columns = new ArrayList<String>();
+        boolean accepted = new OutputScanner(format).scan(line, (name, feature, triplet, version, description) ->
+                columns.addAll(Arrays.asList(name, feature, triplet, version, description)));
+        return accepted ? columns : null;
+    }
+
+    @Test
+    void splitsListLines() {
+        assertEquals(Arrays.asList("zlib", null, "x64-linux", "1.3#2", "A compression library"),
+                scan(OutputScanner.Format.LIST, "zlib:x64-linux                                    1.3#2               A compression library"));
+        assertEquals(Arrays.asList("curl", "ssl", "x64-windows", null, "SSL support"),
+                scan(OutputScanner.Format.LIST, "curl[ssl]:x64-windows                                                 SSL support"));
+        assertEquals(Arrays.asList("fmt", null, "x64-linux", "10.1", ""),
+                scan(OutputScanner.Format.LIST, "fmt:x64-linux   10.1   "));
+    }
+
+    @Test
+    void splitsSearchLines() {
+        assertEquals(Arrays.asList("zlib", null, null, "1.3", "A compression library"),
+                scan(OutputScanner.Format.SEARCH, "zlib                     1.3              A compression library"));
+        assertEquals(Arrays.asList("curl", "http2", null, null, "HTTP/2 support"),
+                scan(OutputScanner.Format.SEARCH, "curl[http2]                               HTTP/2 support"));
+        // one space after the version: it is part of the description
+        assertEquals(Arrays.asList("fmt", null, null, null, "Formatting library 10.1"),
+                scan(OutputScanner.Format.SEARCH, "fmt     Formatting library 10.1"));
+    }
+
+    @Test
+    void rejectsOtherLines() {
+        assertNull(scan(OutputScanner.Format.LIST, ""));
+        assertNull(scan(OutputScanner.Format.LIST, "No packages are installed. Did you mean `search`?"));
+        assertNull(scan(OutputScanner.Format.LIST, "zlib: 1.3"));
+        assertNull(scan(OutputScanner.Format.SEARCH, "The result may be outdated. Run `git pull` to get the latest results."));
+        assertNull(scan(OutputScanner.Format.SEARCH, "zlib"));
+    }
+
+    @Test
+    void reusesItsBufferForLongerLines() {
+        var scanner = new OutputScanner(OutputScanner.Format.SEARCH);
+        var description = "x".repeat(1_000);
+        var seen = new ArrayList<String>();
+        assertTrue(scanner.scan("a   1   short", (n, f, t, v, d) -> seen.add(d)));
+        assertTrue(scanner.scan("b   2   " + description, (n, f, t, v, d) -> seen.add(d)));
+        assertTrue(scanner.scan("c   3   short", (n, f, t, v, d) -> seen.add(d)));
+        assertEquals(List.of("short", description, "short"), seen);
+    }
+
+    @Test
+    void displaysFeatures() {
+        assertEquals("curl[ssl]", OutputScanner.displayName("curl", "ssl"));
+        assertEquals("curl", OutputScanner.displayName("curl", null));
+    }
+}
@@ -0,0 +1,35 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlatformExpressionTest {
+    @Test
+    void evaluatesWhatTheTripletNameTells() {
+        assertTrue(PlatformExpression.matches("windows", "x64-windows"));
+        assertTrue(PlatformExpression.matches("windows", "x64-uwp"));
+        assertFalse(PlatformExpression.matches("!windows", "x64-windows-static"));
+        assertTrue(PlatformExpression.matches("linux | osx", "arm64-osx"));
+        assertTrue(PlatformExpression.matches("linux, osx", "x64-linux"));
+        assertFalse(PlatformExpression.matches("windows & !uwp", "arm64-uwp"));
+        assertTrue(PlatformExpression.matches("!(arm | x86) & static", "x64-windows-static"));
+        assertFalse(PlatformExpression.matches("staticcrt", "x64-windows-static-md"));
+        assertFalse(PlatformExpression.matches("static", "x64-windows"));
+        assertTrue(PlatformExpression.matches("static", "x64-linux"));
+        assertFalse(PlatformExpression.matches("ARM64", "x64-linux"));
+    }
+
+    @Test
+    void treatsWhatItCannotDecideAsAMatch() {
+        assertTrue(PlatformExpression.matches("native", "x64-linux"));
+        assertTrue(PlatformExpression.matches("linux", "x64-custom"));
+        assertTrue(PlatformExpression.matches("(linux", "x64-windows"));
+        assertTrue(PlatformExpression.matches("linux &", "x64-windows"));
+        assertTrue(PlatformExpression.matches("", "x64-windows"));
+        assertTrue(PlatformExpression.matches("linux", null));
+        // known parts still decide: false & unknown, true | unknown
+        assertFalse(PlatformExpression.matches("linux & native", "x64-windows"));
+        assertTrue(PlatformExpression.matches("windows | native", "x64-windows"));
+    }
+}
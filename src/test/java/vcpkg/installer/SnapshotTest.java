@@ -0,0 +1,66 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotTest {
+    private final Map<String, PackageInfo> storage = new HashMap<>();
+
+    private PackageInfo put(String name, PackageInfo.Status status) {
+        var info = new PackageInfo(name, "1.0", name + " library", status);
+        storage.put(name, info);
+        return info;
+    }
+
+    @Test
+    void findsRemovedInsertedAndUpdatedRows() {
+        put("boost", PackageInfo.Status.INSTALLED);
+        var curl = put("curl", PackageInfo.Status.NOT_INSTALLED);
+        put("fmt", PackageInfo.Status.INSTALLED);
+        var older = Snapshot.of(1, List.of("boost", "curl", "fmt"), storage);
+
+        curl.setStatus(PackageInfo.Status.INSTALLING);
+        put("zlib", PackageInfo.Status.NOT_INSTALLED);
+        var newer = Snapshot.of(2, List.of("curl", "fmt", "zlib"), storage);
+        var diff = newer.diffFrom(older);
+
+        assertArrayEquals(new int[]{0}, diff.getRemoved());
+        assertArrayEquals(new int[]{2}, diff.getInserted());
+        assertArrayEquals(new int[]{0}, diff.getUpdated());
+        assertFalse(diff.isReordered());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    void notesReplacedRowsAndReordering() {
+        put("curl", PackageInfo.Status.INSTALLED);
+        put("fmt", PackageInfo.Status.INSTALLED);
+        var older = Snapshot.of(1, List.of("curl", "fmt"), storage);
+
+        put("curl", PackageInfo.Status.INSTALLED);
+        var newer = Snapshot.of(2, List.of("fmt", "curl"), storage);
+        var diff = newer.diffFrom(older);
+
+        assertTrue(diff.isReordered());
+        assertArrayEquals(new int[]{1}, diff.getUpdated());
+        assertEquals(0, diff.getRemoved().length + diff.getInserted().length);
+    }
+
+    @Test
+    void comparesEqualSnapshotsAsEmpty() {
+        put("zlib", PackageInfo.Status.INSTALLED);
+        var older = Snapshot.of(1, List.of("zlib", "missing"), storage);
+        var newer = older.withVersion(2);
+
+        assertTrue(newer.diffFrom(older).isEmpty());
+        assertSame(PackageInfo.MISSING, newer.get(1));
+        assertEquals(2, newer.getVersion());
+        assertTrue(Snapshot.EMPTY.diffFrom(Snapshot.EMPTY).isEmpty());
+        assertArrayEquals(new int[]{0, 1}, newer.diffFrom(Snapshot.EMPTY).getInserted());
+    }
+}
@@ -0,0 +1,106 @@
+package vcpkg.installer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusDatabaseTest {
+    @TempDir
+    Path installed;
+
+    private static String paragraph(String name, String feature, String version, String status) {
+        return "Package: " + name + "\n"
+                + (feature == null ? "Version: " + version + "\n" : "Feature: " + feature + "\n")
+                + "Architecture: x64-linux\n"
+                + "Status: " + status + "\n\n";
+    }
+
+    private void write(String file, String text) throws IOException {
+        var path = installed.resolve("vcpkg").resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, text, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> installedKeys(StatusDatabase database) {
+        return database.installed().stream().map(StatusDatabase.Entry::key).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void parsesCoreAndFeatureParagraphs() throws IOException {
+        write("status", "Package: zlib\r\nVersion: 1.3\r\nPort-Version: 2\r\nArchitecture: x64-linux\r\n"
+                + "Abi: 0123abcd\r\nDescription: compression\r\n  library\r\nStatus: install ok installed\r\n\r\n"
+                + "Package: curl\nVersion: 8.4.0\nDepends: zlib, openssl\nArchitecture: x64-linux\nStatus: install ok installed\n\n"
+                + paragraph("curl", "ssl", null, "install ok installed")
+                + paragraph("fmt", null, "10.1", "purge ok not-installed"));
+        var database = new StatusDatabase(installed);
+
+        assertTrue(database.refresh());
+        assertEquals(List.of("curl:x64-linux", "curl[ssl]:x64-linux", "zlib:x64-linux"), installedKeys(database));
+
+        var zlib = database.find("zlib", "x64-linux");
+        assertEquals("1.3#2", zlib.getVersion());
+        assertEquals("0123abcd", zlib.getAbi());
+        assertEquals("compression\nlibrary", zlib.getDescription());
+        assertEquals(List.of("zlib", "openssl"), database.find("curl", "x64-linux").getDepends());
+        assertFalse(database.find("fmt", "x64-linux").isInstalled());
+    }
+
+    @Test
+    void appliesUpdatesOnceInOrder() throws IOException {
+        write("status", paragraph("zlib", null, "1.3", "install ok installed"));
+        write("updates/0000000001", paragraph("fmt", null, "10.1", "install ok installed"));
+        write("updates/0000000002", paragraph("zlib", null, "1.3", "purge ok not-installed"));
+        var database = new StatusDatabase(installed);
+
+        assertTrue(database.refresh());
+        assertEquals(List.of("fmt:x64-linux"), installedKeys(database));
+        long generation = database.getGeneration();
+
+        assertFalse(database.refresh());
+        assertEquals(generation, database.getGeneration());
+
+        write("updates/0000000003", paragraph("zlib", null, "1.3.1", "install ok installed"));
+        assertTrue(database.refresh());
+        assertEquals(List.of("fmt:x64-linux", "zlib:x64-linux"), installedKeys(database));
+        assertEquals("1.3.1", database.find("zlib", "x64-linux").getVersion());
+    }
+
+    @Test
+    void skipsTheDeltaVcpkgIsStillWriting() throws IOException {
+        write("status", paragraph("zlib", null, "1.3", "install ok installed"));
+        write("updates/0000000001", paragraph("fmt", null, "10.1", "install ok installed"));
+        // cut off mid-paragraph, as vcpkg leaves it until the rename
+        write("updates/incomplete", "Package: zlib\nVersion: 1.3\nArchitecture: x64-linux\nStatus: purge ok not-inst");
+        var database = new StatusDatabase(installed);
+
+        assertTrue(database.refresh());
+        assertEquals(List.of("fmt:x64-linux", "zlib:x64-linux"), installedKeys(database));
+
+        var updates = installed.resolve("vcpkg").resolve("updates");
+        Files.writeString(updates.resolve("incomplete"), paragraph("zlib", null, "1.3", "purge ok not-installed"));
+        Files.move(updates.resolve("incomplete"), updates.resolve("0000000002"), StandardCopyOption.ATOMIC_MOVE);
+        assertTrue(database.refresh());
+        assertEquals(List.of("fmt:x64-linux"), installedKeys(database));
+
+        // nothing new: no full reload
+        assertFalse(database.refresh());
+    }
+
+    @Test
+    void onlyNumberedFilesAreUpdates() {
+        assertTrue(StatusDatabase.isUpdate("0000000001"));
+        assertTrue(StatusDatabase.isUpdate("42"));
+        assertFalse(StatusDatabase.isUpdate("incomplete"));
+        assertFalse(StatusDatabase.isUpdate("0000000001.tmp"));
+        assertFalse(StatusDatabase.isUpdate(""));
+    }
+}